@@ -0,0 +1,144 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Fixtures shared by the benchmarks. Everything here is deterministic, so
+ * that runs are comparable between builds and machines.
+ *
+ * @author dth
+ */
+final class BenchmarkSupport {
+    /** The seed used for all generated data. */
+    static final long SEED = 42L;
+
+    /** The source encoding reported by {@link #newHelper()}. */
+    static final String ENCODING = "UTF-8";
+
+    private BenchmarkSupport() {}
+
+    /**
+     * Create a rule helper which evaluates the expressions used by the rules
+     * without a running Maven session, and which discards all logging.
+     *
+     * @return a new, stateless, rule helper.
+     */
+    static EnforcerRuleHelper newHelper() {
+        final Log log = (Log) newProxy(Log.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                // All isXxxEnabled methods report false, and all else is void
+                return method.getReturnType() == boolean.class
+                        ? Boolean.FALSE : null;
+            }
+        });
+
+        return (EnforcerRuleHelper) newProxy(EnforcerRuleHelper.class,
+                new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                final String name = method.getName();
+                if ("getLog".equals(name))
+                    return log;
+                if ("evaluate".equals(name)
+                        && "${project.build.sourceEncoding}".equals(args[0]))
+                    return ENCODING;
+                return null;
+            }
+        });
+    }
+
+    private static Object newProxy(final Class<?> type,
+            final InvocationHandler handler) {
+        return Proxy.newProxyInstance(BenchmarkSupport.class.getClassLoader(),
+                new Class<?>[] { type }, handler);
+    }
+
+    /**
+     * Get a trivially true script in the given language.
+     *
+     * @param language the script language.
+     * @return the script source.
+     */
+    static String trueScript(final String language) {
+        return "groovy".equals(language) ? "1 == 1" : "1 == 1;";
+    }
+
+    /**
+     * Write a script to a temporary file, deleted on exit.
+     *
+     * @param source the script source.
+     * @return the script file.
+     * @throws IOException if the file cannot be written.
+     */
+    static File newScriptFile(final String source) throws IOException {
+        final File file = File.createTempFile("benchmark", ".script");
+        file.deleteOnExit();
+
+        final Writer writer =
+                new OutputStreamWriter(new FileOutputStream(file), ENCODING);
+        try {
+            writer.write(source);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    /**
+     * Generate a binding map of a given size, with a mixture of value types,
+     * from a fixed seed.
+     *
+     * @param size the number of bindings.
+     * @return the bindings.
+     */
+    static Map<String, Object> newBindings(final int size) {
+        final Random random = new Random(SEED);
+        final Map<String, Object> bindings = new HashMap<String, Object>();
+        for (int ii = 0; ii < size; ii++) {
+            final String key = "binding" + ii;
+            switch (ii % 3) {
+            case 0:
+                bindings.put(key, Long.valueOf(random.nextLong()));
+                break;
+            case 1:
+                bindings.put(key, Long.toHexString(random.nextLong()));
+                break;
+            default:
+                bindings.put(key, java.util.Arrays.asList(
+                        random.nextInt(), random.nextInt(), random.nextInt()));
+            }
+        }
+        return bindings;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.dthume.maven.enforcer.BenchmarkSupport.newBindings;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link ScriptRule#getCacheId()} for a cacheable rule as the
+ * number of script bindings grows, both with the configuration digest
+ * memoized and, as on the first call after configuration, without.
+ *
+ * @author dth
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class CacheIdBenchmark {
+    @Param({ "0", "100", "10000" })
+    public int bindingCount;
+
+    private ScriptRule rule;
+    private Map<String, Object> bindings;
+
+    @Setup
+    public void setUp() {
+        rule = new ScriptRule();
+        rule.setScript("true;");
+        rule.setValidatorScript("true;");
+        bindings = newBindings(bindingCount);
+        rule.setScriptBindings(bindings);
+    }
+
+    @Benchmark
+    public String getCacheId() {
+        return rule.getCacheId();
+    }
+
+    @Benchmark
+    public String getCacheIdUnmemoized() {
+        // Reconfiguring the rule discards its configuration digest
+        rule.setScriptBindings(bindings);
+        return rule.getCacheId();
+    }
+}
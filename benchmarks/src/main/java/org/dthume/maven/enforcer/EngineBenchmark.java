@@ -0,0 +1,78 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.dthume.maven.enforcer.BenchmarkSupport.newHelper;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of obtaining a script engine, both directly from a
+ * {@link ScriptEngineManager} and via the {@link ScriptEnginePool}.
+ *
+ * @author dth
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class EngineBenchmark {
+    @Param({ "javascript", "groovy" })
+    public String language;
+
+    private ScriptEngineManager manager;
+    private ScriptEnginePool pool;
+
+    @Setup
+    public void setUp() {
+        manager = new ScriptEngineManager();
+        pool = ScriptEnginePool.forLanguage(newHelper(), language);
+        pool.clear();
+    }
+
+    @Benchmark
+    public ScriptEngine createEngine() {
+        return manager.getEngineByName(language);
+    }
+
+    @Benchmark
+    public ScriptEngine borrowPooledEngine() {
+        final ScriptEngine engine = pool.borrow();
+        pool.release(engine);
+        return engine;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link DefaultScriptResultEvaluator} over the result types
+ * produced by the supported script languages.
+ *
+ * @author dth
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ResultEvaluatorBenchmark {
+    private static final int RESULT_COUNT = 1024;
+
+    private final ScriptResultEvaluator evaluator =
+            new DefaultScriptResultEvaluator();
+
+    private Object[] results;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(BenchmarkSupport.SEED);
+        results = new Object[RESULT_COUNT];
+        for (int ii = 0; ii < RESULT_COUNT; ii++) {
+            switch (random.nextInt(6)) {
+            case 0: results[ii] = null; break;
+            case 1: results[ii] = Boolean.valueOf(random.nextBoolean()); break;
+            case 2: results[ii] = Integer.valueOf(random.nextInt(2)); break;
+            case 3: results[ii] = Long.valueOf(random.nextInt(2)); break;
+            case 4: results[ii] = Double.valueOf(random.nextInt(2)); break;
+            default: results[ii] = "result";
+            }
+        }
+    }
+
+    @Benchmark
+    public int isValidResult() {
+        int valid = 0;
+        for (final Object result : results)
+            if (evaluator.isValidResult(result)) valid++;
+        return valid;
+    }
+}
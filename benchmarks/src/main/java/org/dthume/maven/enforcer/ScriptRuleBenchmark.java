@@ -0,0 +1,105 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.dthume.maven.enforcer.BenchmarkSupport.newHelper;
+import static org.dthume.maven.enforcer.BenchmarkSupport.newScriptFile;
+import static org.dthume.maven.enforcer.BenchmarkSupport.trueScript;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleException;
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a complete {@link ScriptRule} execution for inline and file
+ * based scripts, and the validator path taken for cached rules.
+ *
+ * @author dth
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ScriptRuleBenchmark {
+    @Param({ "javascript", "groovy" })
+    public String language;
+
+    private EnforcerRuleHelper helper;
+    private ScriptRule inlineRule;
+    private ScriptRule fileRule;
+    private ScriptRule cachedRule;
+    private ScriptRule validatingRule;
+
+    @Setup
+    public void setUp() throws Exception {
+        helper = newHelper();
+        final String script = trueScript(language);
+
+        inlineRule = newRule();
+        inlineRule.setScript(script);
+
+        fileRule = newRule();
+        fileRule.setScriptFile(newScriptFile(script));
+
+        cachedRule = newRule();
+        cachedRule.setScript(script);
+        cachedRule.setValidatorScript(script);
+        cachedRule.execute(helper);
+
+        validatingRule = newRule();
+        validatingRule.setScript(script);
+        validatingRule.setValidatorScript(script);
+    }
+
+    private ScriptRule newRule() {
+        final ScriptRule rule = new ScriptRule();
+        rule.setLanguage(language);
+        return rule;
+    }
+
+    @Benchmark
+    public void executeInlineScript() throws EnforcerRuleException {
+        inlineRule.execute(helper);
+    }
+
+    @Benchmark
+    public void executeScriptFile() throws EnforcerRuleException {
+        fileRule.execute(helper);
+    }
+
+    @Benchmark
+    public boolean validateCachedResult() {
+        return validatingRule.isResultValid(cachedRule);
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.component.configurator.expression.ExpressionEvaluationException;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * The facts collected from each module of a reactor by an aggregating
+ * rule, for evaluation by its aggregate script once every module expected
+ * to execute the rule has reported, in whatever order, as modules may
+ * complete out of order in parallel builds.
+ *
+ * Facts are scoped to the Maven session and keyed by rule configuration,
+ * so that identically configured rules in different modules share them.
+ *
+ * @author dth
+ */
+final class AggregateFacts {
+    /** The prefix of the session scope attributes holding facts. */
+    private static final String ATTRIBUTE = AggregateFacts.class.getName();
+
+    /** The key of the plugin which executes rules. */
+    private static final String ENFORCER_PLUGIN =
+            "org.apache.maven.plugins:maven-enforcer-plugin";
+
+    /** The facts collected so far, keyed by module. */
+    private final ConcurrentMap<String, Object> facts =
+            new ConcurrentHashMap<String, Object>();
+
+    /** The modules which have reported, whether or not they had facts. */
+    private final ConcurrentMap<String, Boolean> reported =
+            new ConcurrentHashMap<String, Boolean>();
+
+    /** Whether the aggregate script has been claimed for evaluation. */
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    /**
+     * Get the facts collected by a rule in the current Maven session.
+     *
+     * @param helper the helper to look up the session with.
+     * @param ruleId the configuration id of the aggregating rule.
+     * @return the collected facts, never {@code null}.
+     */
+    static AggregateFacts forSession(final EnforcerRuleHelper helper,
+            final String ruleId) {
+        final RuleScope scope = RuleScope.session(helper);
+        final String key = ATTRIBUTE + "." + ruleId;
+        final Object facts = scope.getAttribute(key);
+        return null != facts ? (AggregateFacts) facts
+                : (AggregateFacts) scope.putAttributeIfAbsent(key,
+                        new AggregateFacts());
+    }
+
+    /**
+     * Get the key identifying the current module.
+     *
+     * @param helper the helper to look up the project with.
+     * @return the {@code groupId:artifactId} of the current project, or
+     * {@code null} if there is no current project.
+     */
+    static String moduleKey(final EnforcerRuleHelper helper) {
+        final Object project = evaluate(helper, "${project}");
+        return project instanceof MavenProject
+                ? moduleKey((MavenProject) project) : null;
+    }
+
+    private static String moduleKey(final MavenProject project) {
+        return project.getGroupId() + ":" + project.getArtifactId();
+    }
+
+    /**
+     * Get the keys of all modules in the reactor, in build order.
+     *
+     * @param helper the helper to look up the session with.
+     * @return the module keys, which are empty if there is no session.
+     */
+    static List<String> reactorKeys(final EnforcerRuleHelper helper) {
+        final Object session = evaluate(helper, "${session}");
+        if (!(session instanceof MavenSession))
+            return Collections.emptyList();
+
+        final List<String> keys = new ArrayList<String>();
+        final List<?> projects = ((MavenSession) session).getSortedProjects();
+        if (null != projects)
+            for (final Object project : projects)
+                keys.add(moduleKey((MavenProject) project));
+        return keys;
+    }
+
+    /**
+     * Get the keys of the modules in the reactor expected to execute an
+     * aggregating rule, in build order: those whose enforcer plugin
+     * configuration holds the same aggregate script. If the current module
+     * does not appear to, as when its configuration is interpolated only
+     * on execution, those building with the enforcer plugin are expected;
+     * if the current module does not appear to either, as when the plugin
+     * is invoked from the command line, every module is expected.
+     *
+     * @param helper the helper to look up the session with.
+     * @param script the inline aggregate script, or {@code null}.
+     * @param scriptFile the aggregate script file, or {@code null}.
+     * @return the module keys, which are empty if there is no session.
+     */
+    static List<String> expectedKeys(final EnforcerRuleHelper helper,
+            final String script, final File scriptFile) {
+        final Object session = evaluate(helper, "${session}");
+        if (!(session instanceof MavenSession))
+            return Collections.emptyList();
+
+        final List<String> all = new ArrayList<String>();
+        final List<String> enforced = new ArrayList<String>();
+        final List<String> configured = new ArrayList<String>();
+        final List<?> projects = ((MavenSession) session).getSortedProjects();
+        if (null != projects)
+            for (final Object o : projects) {
+                final MavenProject project = (MavenProject) o;
+                final String key = moduleKey(project);
+                all.add(key);
+                final Plugin plugin = getEnforcer(project);
+                if (null == plugin) continue;
+
+                enforced.add(key);
+                if (configures(plugin, project, script, scriptFile))
+                    configured.add(key);
+            }
+
+        final String module = moduleKey(helper);
+        if (configured.contains(module)) return configured;
+        return enforced.contains(module) ? enforced : all;
+    }
+
+    private static Plugin getEnforcer(final MavenProject project) {
+        final List<?> plugins = project.getBuildPlugins();
+        if (null != plugins)
+            for (final Object plugin : plugins)
+                if (ENFORCER_PLUGIN.equals(((Plugin) plugin).getKey()))
+                    return (Plugin) plugin;
+        return null;
+    }
+
+    /**
+     * Determine whether the plugin configuration, or that of any of its
+     * executions, holds a rule with the given aggregate script.
+     */
+    private static boolean configures(final Plugin plugin,
+            final MavenProject project, final String script,
+            final File scriptFile) {
+        if (configures(plugin.getConfiguration(), project, script,
+                scriptFile))
+            return true;
+
+        final List<?> executions = plugin.getExecutions();
+        if (null != executions)
+            for (final Object execution : executions)
+                if (configures(((PluginExecution) execution)
+                        .getConfiguration(), project, script, scriptFile))
+                    return true;
+        return false;
+    }
+
+    private static boolean configures(final Object configuration,
+            final MavenProject project, final String script,
+            final File scriptFile) {
+        if (!(configuration instanceof Xpp3Dom)) return false;
+
+        final Xpp3Dom dom = (Xpp3Dom) configuration;
+        final Xpp3Dom inline = dom.getChild("aggregateScript");
+        if (null != inline && null != script && null != inline.getValue()
+                && script.trim().equals(inline.getValue().trim()))
+            return true;
+
+        final Xpp3Dom file = dom.getChild("aggregateScriptFile");
+        if (null != file && null != scriptFile && null != file.getValue()
+                && toCanonicalFile(scriptFile).equals(toCanonicalFile(
+                        resolve(project, file.getValue().trim()))))
+            return true;
+
+        for (final Xpp3Dom child : dom.getChildren())
+            if (configures(child, project, script, scriptFile))
+                return true;
+        return false;
+    }
+
+    /** Resolve a path as the plugin configurator would for the project. */
+    private static File resolve(final MavenProject project,
+            final String path) {
+        final File file = new File(path);
+        return file.isAbsolute() || null == project.getBasedir()
+                ? file : new File(project.getBasedir(), path);
+    }
+
+    private static File toCanonicalFile(final File file) {
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException e) {
+            return file.getAbsoluteFile();
+        }
+    }
+
+    private static Object evaluate(final EnforcerRuleHelper helper,
+            final String expression) {
+        try {
+            return helper.evaluate(expression);
+        } catch (ExpressionEvaluationException e) {
+            helper.getLog().debug("Cannot evaluate " + expression, e);
+            return null;
+        }
+    }
+
+    /**
+     * Record the facts collected from a module, replacing any facts
+     * previously collected from it, and mark the module as reported.
+     *
+     * @param module the module key.
+     * @param moduleFacts the facts, or {@code null} to record none.
+     */
+    void collect(final String module, final Object moduleFacts) {
+        if (null == moduleFacts)
+            facts.remove(module);
+        else
+            facts.put(module, moduleFacts);
+        reported.put(module, Boolean.TRUE);
+    }
+
+    /**
+     * Get the expected modules which have yet to report.
+     *
+     * @param expected the keys of the modules expected to report.
+     * @return the keys of those which have not, in the order given.
+     */
+    List<String> missing(final List<String> expected) {
+        final List<String> missing = new ArrayList<String>();
+        for (final String module : expected)
+            if (!reported.containsKey(module)) missing.add(module);
+        return missing;
+    }
+
+    /**
+     * Claim the evaluation of the aggregate script, which may be claimed
+     * only once per session.
+     *
+     * @return {@code true} if this is the first claim.
+     */
+    boolean claim() { return claimed.compareAndSet(false, true); }
+
+    /**
+     * Get a read only view of the collected facts, keyed by module.
+     *
+     * @param order the module keys in reactor order; facts from modules
+     * not listed follow those which are.
+     * @return the collected facts, in reactor order.
+     */
+    Map<String, Object> view(final List<String> order) {
+        final Map<String, Object> view = new LinkedHashMap<String, Object>();
+        for (final String module : order) {
+            final Object moduleFacts = facts.get(module);
+            if (null != moduleFacts) view.put(module, moduleFacts);
+        }
+        for (final Map.Entry<String, Object> entry : facts.entrySet())
+            if (!view.containsKey(entry.getKey()))
+                view.put(entry.getKey(), entry.getValue());
+        return Collections.unmodifiableMap(view);
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import java.io.Writer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.plugin.logging.Log;
+import org.dthume.maven.util.LogWriter.LogLevel;
+
+/**
+ * A {@link Writer} which aggregates script output into lines, or into a
+ * single message per evaluation, before writing it to a Maven {@link Log},
+ * optionally handing messages off to the logging thread of a
+ * {@link Dispatcher}.
+ *
+ * At most {@code maxBuffer} characters are buffered; output beyond that is
+ * written immediately, even part way through a line. Buffered output is
+ * written when the writer is closed, which also waits for any asynchronous
+ * messages from this writer to be logged, as does {@link #flush()}.
+ * Instances are not thread safe.
+ *
+ * @author dth
+ */
+final class BufferedLogWriter extends Writer {
+    /** The maximum number of messages awaiting a logging thread. */
+    static final int MAX_PENDING = 1024;
+
+    private final Log log;
+    private final LogLevel level;
+    private final boolean perLine;
+    private final int maxBuffer;
+    private final Dispatcher dispatcher;
+
+    private final StringBuilder buffer = new StringBuilder();
+
+    /** Messages handed to the dispatcher and not yet logged. */
+    private int unlogged = 0;
+
+    /**
+     * Create a new writer.
+     *
+     * @param log the log to write to.
+     * @param level the level to log at.
+     * @param perLine {@code true} to log each line as it is completed, or
+     * {@code false} to log all output when the writer is closed.
+     * @param maxBuffer the maximum number of characters to buffer.
+     * @param dispatcher the dispatcher to log from, or {@code null} to log
+     * from the writing thread.
+     */
+    BufferedLogWriter(final Log log, final LogLevel level,
+            final boolean perLine, final int maxBuffer,
+            final Dispatcher dispatcher) {
+        this.log = log;
+        this.level = level;
+        this.perLine = perLine;
+        this.maxBuffer = Math.max(1, maxBuffer);
+        this.dispatcher = dispatcher;
+    }
+
+    /** {@inheritDoc} */
+    public void write(final char[] cbuf, final int off, final int len) {
+        buffer.append(cbuf, off, len);
+
+        if (perLine) emitLines();
+
+        while (buffer.length() >= maxBuffer) {
+            emit(buffer.substring(0, maxBuffer));
+            buffer.delete(0, maxBuffer);
+        }
+    }
+
+    /**
+     * Wait for the messages this writer has handed to its dispatcher to be
+     * logged. Output still buffered, such as an incomplete line, is only
+     * written when a line completes, the buffer fills, or this writer is
+     * closed.
+     */
+    public void flush() {
+        if (null != dispatcher) awaitLogged();
+    }
+
+    /** {@inheritDoc} */
+    public void close() {
+        if (0 < buffer.length()) {
+            emit(stripTrailingNewline(buffer.toString()));
+            buffer.setLength(0);
+        }
+
+        flush();
+    }
+
+    private void emitLines() {
+        int start = 0;
+        for (int end = buffer.indexOf("\n"); -1 != end;
+                end = buffer.indexOf("\n", start)) {
+            emit(stripTrailingNewline(buffer.substring(start, end + 1)));
+            start = end + 1;
+        }
+        buffer.delete(0, start);
+    }
+
+    private static String stripTrailingNewline(final String s) {
+        int end = s.length();
+        if (0 < end && '\n' == s.charAt(end - 1)) end--;
+        if (0 < end && '\r' == s.charAt(end - 1)) end--;
+        return s.substring(0, end);
+    }
+
+    private void emit(final String message) {
+        if (null == dispatcher) {
+            log(log, level, message);
+            return;
+        }
+
+        synchronized (this) { unlogged++; }
+        dispatcher.enqueue(new Message(this, message));
+    }
+
+    private synchronized void awaitLogged() {
+        try {
+            while (0 < unlogged) wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void logged() {
+        if (0 == --unlogged) notifyAll();
+    }
+
+    private static void log(final Log log, final LogLevel level,
+            final String message) {
+        switch (level) {
+        case DEBUG: log.debug(message); break;
+        case WARN: log.warn(message); break;
+        case ERROR: log.error(message); break;
+        default: log.info(message);
+        }
+    }
+
+    private static final class Message {
+        final BufferedLogWriter writer;
+        final String text;
+
+        Message(final BufferedLogWriter writer, final String text) {
+            this.writer = writer;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Logs the messages of asynchronous writers, in order, on a single
+     * background thread. Dispatchers are scoped to the Maven session, and
+     * their thread exits once it has been idle for {@link #LINGER}
+     * milliseconds, so that neither outlives the build which used them.
+     */
+    static final class Dispatcher implements Runnable {
+        /** The time, in milliseconds, an idle logging thread lingers. */
+        static final long LINGER = 100L;
+
+        /** The session scope attribute holding the dispatcher. */
+        private static final String ATTRIBUTE = Dispatcher.class.getName();
+
+        private final BlockingQueue<Message> queue =
+                new LinkedBlockingQueue<Message>(MAX_PENDING);
+
+        /** Whether the logging thread is running; guarded by {@code this}. */
+        private boolean running = false;
+
+        Dispatcher() {}
+
+        /**
+         * Get the dispatcher of the current Maven session.
+         *
+         * @param helper the helper to look up the session with.
+         * @return the dispatcher, never {@code null}.
+         */
+        static Dispatcher forSession(final EnforcerRuleHelper helper) {
+            final RuleScope scope = RuleScope.session(helper);
+            final Object dispatcher = scope.getAttribute(ATTRIBUTE);
+            return null != dispatcher ? (Dispatcher) dispatcher
+                    : (Dispatcher) scope.putAttributeIfAbsent(ATTRIBUTE,
+                            new Dispatcher());
+        }
+
+        private void enqueue(final Message message) {
+            try {
+                // Blocks if the logging thread falls behind, bounding memory
+                queue.put(message);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                message.writer.logged();
+                return;
+            }
+
+            synchronized (this) {
+                if (running) return;
+                running = true;
+            }
+            final Thread thread = new Thread(this, "script-output");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /** {@inheritDoc} */
+        public void run() {
+            while (true) {
+                Message message;
+                try {
+                    message = queue.poll(LINGER, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    // Only exit once no writer is left waiting on the queue
+                    message = null;
+                }
+
+                if (null != message) {
+                    logQuietly(message);
+                } else {
+                    synchronized (this) {
+                        if (queue.isEmpty()) {
+                            running = false;
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+
+        private void logQuietly(final Message message) {
+            final BufferedLogWriter writer = message.writer;
+            try {
+                log(writer.log, writer.level, message.text);
+            } catch (RuntimeException e) {
+                // A failing log must not stop output from other rules
+            } finally {
+                writer.logged();
+            }
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Content based hashing of files and configuration values, used to build
+ * cache keys which identify <i>what</i> a rule evaluates rather than
+ * <i>where</i> it came from.
+ *
+ * @author dth
+ */
+final class ContentHashes {
+    /** File digests, keyed by absolute path. */
+    private static final ConcurrentMap<String, FileDigest> FILE_DIGESTS =
+            new ConcurrentHashMap<String, FileDigest>();
+
+    /** Orders raw digests as unsigned bytes. */
+    private static final Comparator<byte[]> DIGEST_ORDER =
+            new Comparator<byte[]>() {
+                public int compare(final byte[] a, final byte[] b) {
+                    final int length = Math.min(a.length, b.length);
+                    for (int ii = 0; ii < length; ii++) {
+                        final int diff = (a[ii] & 0xff) - (b[ii] & 0xff);
+                        if (0 != diff) return diff;
+                    }
+                    return a.length - b.length;
+                }
+            };
+
+    private ContentHashes() {}
+
+    /**
+     * Get the md5 hash of a file's content.
+     *
+     * The file is streamed through the digest via NIO, and the result
+     * memoized until the file's modification time or size change.
+     *
+     * @param file the file to hash.
+     * @return the hex encoded md5 hash of the file's content.
+     * @throws IOException if the file cannot be read.
+     */
+    static String ofFile(final File file) throws IOException {
+        final String path = file.getAbsolutePath();
+        final long lastModified = file.lastModified();
+        final long length = file.length();
+
+        final FileDigest cached = FILE_DIGESTS.get(path);
+        if (null != cached && cached.matches(lastModified, length))
+            return cached.hex;
+
+        final String hex = digestFile(file);
+        FILE_DIGESTS.put(path, new FileDigest(lastModified, length, hex));
+        return hex;
+    }
+
+    private static String digestFile(final File file) throws IOException {
+        final MessageDigest digest = newDigest();
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final FileChannel channel = in.getChannel();
+            final ByteBuffer buffer = ByteBuffer.allocate(8192);
+            while (-1 != channel.read(buffer)) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            in.close();
+        }
+        return new String(Hex.encodeHex(digest.digest()));
+    }
+
+    /**
+     * Get a stable, structural md5 hash of a number of named values.
+     *
+     * Maps are hashed independently of iteration order, as are sets; lists
+     * and arrays are hashed in order. Any other value is hashed via its type
+     * and string form. Each value is streamed straight into a single
+     * digest, so no intermediate string is built however large the values
+     * are.
+     *
+     * @param namesAndValues alternating names and values, which may be
+     * {@code null}.
+     * @return the hex encoded md5 hash of the named values.
+     */
+    static String ofFields(final Object... namesAndValues) {
+        final Hasher hasher = new Hasher();
+        for (int ii = 0; ii < namesAndValues.length; ii += 2) {
+            hasher.update(String.valueOf(namesAndValues[ii]));
+            hasher.update(namesAndValues[ii + 1]);
+        }
+        return hasher.toHex();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not supported", e);
+        }
+    }
+
+    /**
+     * A single structural hash computation. Digests are reused across
+     * values, one for each level of nested maps and sets, and strings are
+     * encoded into a shared buffer and fed to the digest in one call.
+     */
+    private static final class Hasher {
+        private final List<MessageDigest> digests =
+                new ArrayList<MessageDigest>();
+        private final Map<Object, Object> visiting =
+                new IdentityHashMap<Object, Object>();
+        private byte[] buffer = new byte[256];
+        private MessageDigest digest = newDigest();
+
+        Hasher() {
+            digests.add(digest);
+        }
+
+        String toHex() {
+            return new String(Hex.encodeHex(digest.digest()));
+        }
+
+        void update(final Object value) {
+            if (null == value) {
+                update("null");
+            } else if (null != visiting.put(value, value)) {
+                update("<cycle>");
+            } else {
+                if (value instanceof Map<?, ?>)
+                    updateMap((Map<?, ?>) value);
+                else if (value instanceof Set<?>)
+                    updateSet((Set<?>) value);
+                else if (value instanceof Collection<?>)
+                    updateCollection((Collection<?>) value);
+                else if (value.getClass().isArray())
+                    updateArray(value);
+                else
+                    updateScalar(value);
+
+                visiting.remove(value);
+            }
+        }
+
+        private void updateMap(final Map<?, ?> map) {
+            update("{");
+            for (final byte[] entry : sortedHashes(map.entrySet()))
+                digest.update(entry);
+            update("}");
+        }
+
+        private void updateSet(final Set<?> set) {
+            update("#{");
+            for (final byte[] element : sortedHashes(set))
+                digest.update(element);
+            update("}");
+        }
+
+        /**
+         * Hash each value separately, and order the raw digests, so that
+         * the combined hash is independent of iteration order.
+         */
+        private List<byte[]> sortedHashes(final Collection<?> values) {
+            final List<byte[]> hashes = new ArrayList<byte[]>(values.size());
+            final MessageDigest outer = digest;
+            final int depth = digests.indexOf(outer) + 1;
+            if (digests.size() == depth) digests.add(newDigest());
+            digest = digests.get(depth);
+            digest.reset();
+            try {
+                for (final Object value : values) {
+                    if (value instanceof Map.Entry<?, ?>) {
+                        final Map.Entry<?, ?> entry = (Map.Entry<?, ?>) value;
+                        update(entry.getKey());
+                        update("=");
+                        update(entry.getValue());
+                    } else {
+                        update(value);
+                    }
+                    hashes.add(digest.digest());
+                }
+            } finally {
+                digest = outer;
+            }
+            Collections.sort(hashes, DIGEST_ORDER);
+            return hashes;
+        }
+
+        private void updateCollection(final Collection<?> collection) {
+            update("[");
+            for (final Object element : collection) {
+                update(element);
+                update(",");
+            }
+            update("]");
+        }
+
+        private void updateArray(final Object array) {
+            update("[");
+            final int length = Array.getLength(array);
+            for (int ii = 0; ii < length; ii++) {
+                update(Array.get(array, ii));
+                update(",");
+            }
+            update("]");
+        }
+
+        private void updateScalar(final Object value) {
+            update(value.getClass().getName());
+            update(":");
+            update(String.valueOf(value));
+        }
+
+        void update(final String s) {
+            final int length = s.length();
+            final int size = 2 * length + 2;
+            if (buffer.length < size)
+                buffer = new byte[Math.max(size, 2 * buffer.length)];
+
+            int pos = 0;
+            for (int ii = 0; ii < length; ii++) {
+                final char c = s.charAt(ii);
+                buffer[pos++] = (byte) (c >> 8);
+                buffer[pos++] = (byte) c;
+            }
+            // Terminate each token so that adjacent tokens cannot collide
+            buffer[pos++] = 0;
+            buffer[pos++] = 0;
+            digest.update(buffer, 0, pos);
+        }
+    }
+
+    private static final class FileDigest {
+        final long lastModified;
+        final long length;
+        final String hex;
+
+        FileDigest(final long lastModified, final long length,
+                final String hex) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.hex = hex;
+        }
+
+        boolean matches(final long lastModified, final long length) {
+            return this.lastModified == lastModified && this.length == length;
+        }
+    }
+}
@@ -19,13 +19,18 @@
  */
 package org.dthume.maven.enforcer;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
 /**
  * Basic implementation with support for core Java types.
  * 
  * <ul>
  * <li>{@code null == false}</li>
  * <li>{@link Boolean} values are simply returned</li>
- * <li>{@link Number} types are {@code false} if zero, otherwise {@code true}<li>
+ * <li>{@link Number} types are {@code false} if zero, otherwise {@code true};
+ * {@link BigDecimal} and {@link BigInteger} are compared exactly, by sign,
+ * rather than as a {@code double}<li>
  * <li>All other values are {@code true}<li>
  * </ul>
  * 
@@ -41,10 +46,12 @@ public class DefaultScriptResultEvaluator implements ScriptResultEvaluator {
             return 0 != ((Integer) result).intValue();
         if (result instanceof Long)
             return 0L != ((Long) result).longValue();
-        if (result instanceof Float)
-            return 0.0F != ((Float) result).floatValue();
-        if (result instanceof Double)
-            return 0.0D != ((Double) result).doubleValue();
+        if (result instanceof BigDecimal)
+            return 0 != ((BigDecimal) result).signum();
+        if (result instanceof BigInteger)
+            return 0 != ((BigInteger) result).signum();
+        if (result instanceof Number)
+            return 0.0D != ((Number) result).doubleValue();
         return true;
     }
 }
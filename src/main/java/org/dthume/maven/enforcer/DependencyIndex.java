@@ -0,0 +1,332 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.enforcer.rule.api.EnforcerRuleException;
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.codehaus.plexus.component.configurator.expression.ExpressionEvaluationException;
+
+/**
+ * An immutable index of the resolved dependency graph of a project, built
+ * once per module and shared by all rules within it.
+ *
+ * Artifacts are identified by {@code groupId:artifactId} keys. Edges are
+ * derived from the dependency trail of each artifact, so each artifact has
+ * the single parent through which Maven resolved it; the project itself is
+ * the parent of its direct dependencies.
+ *
+ * @author dth
+ */
+public final class DependencyIndex {
+    /** The project scope attribute holding the index of the project. */
+    private static final String ATTRIBUTE = DependencyIndex.class.getName();
+
+    private final String projectKey;
+    private final Map<String, Artifact> artifacts;
+    private final Map<String, List<Artifact>> byGroupId;
+    private final Map<String, List<Artifact>> byScope;
+    private final Map<String, List<String>> paths;
+    private final Map<String, Set<String>> dependencies;
+    private final Map<String, Set<String>> dependents;
+
+    /**
+     * Index a set of resolved artifacts.
+     *
+     * @param projectKey the {@code groupId:artifactId} of the project.
+     * @param resolved the resolved artifacts of the project.
+     */
+    DependencyIndex(final String projectKey,
+            final Collection<? extends Artifact> resolved) {
+        this.projectKey = projectKey;
+
+        final Map<String, Artifact> artifacts =
+                new LinkedHashMap<String, Artifact>();
+        final Map<String, List<Artifact>> byGroupId =
+                new LinkedHashMap<String, List<Artifact>>();
+        final Map<String, List<Artifact>> byScope =
+                new LinkedHashMap<String, List<Artifact>>();
+        final Map<String, List<String>> paths =
+                new LinkedHashMap<String, List<String>>();
+        final Map<String, Set<String>> dependencies =
+                new LinkedHashMap<String, Set<String>>();
+        final Map<String, Set<String>> dependents =
+                new LinkedHashMap<String, Set<String>>();
+
+        for (final Artifact artifact : resolved) {
+            final String key = toKey(artifact);
+            artifacts.put(key, artifact);
+            add(byGroupId, artifact.getGroupId(), artifact);
+            add(byScope, artifact.getScope(), artifact);
+
+            final List<String> path = toPath(artifact.getDependencyTrail());
+            paths.put(key, path);
+
+            final String parent = 1 < path.size()
+                    ? path.get(path.size() - 2) : projectKey;
+            add(dependencies, parent, key);
+            add(dependents, key, parent);
+        }
+
+        this.artifacts = Collections.unmodifiableMap(artifacts);
+        this.byGroupId = freezeLists(byGroupId);
+        this.byScope = freezeLists(byScope);
+        this.paths = Collections.unmodifiableMap(paths);
+        this.dependencies = freezeSets(dependencies);
+        this.dependents = freezeSets(dependents);
+    }
+
+    /**
+     * Get the index of the current project, building it on first use.
+     *
+     * @param helper the helper to look up the project with.
+     * @return the index of the resolved dependencies of the project.
+     * @throws EnforcerRuleException if the project cannot be evaluated.
+     */
+    static DependencyIndex forProject(final EnforcerRuleHelper helper)
+            throws EnforcerRuleException {
+        final RuleScope scope = RuleScope.project(helper);
+        final Object index = scope.getAttribute(ATTRIBUTE);
+        if (null != index) return (DependencyIndex) index;
+
+        try {
+            final String projectKey = helper.evaluate("${project.groupId}")
+                    + ":" + helper.evaluate("${project.artifactId}");
+            final Object resolved = helper.evaluate("${project.artifacts}");
+
+            final List<Artifact> artifacts = new ArrayList<Artifact>();
+            if (resolved instanceof Collection<?>)
+                for (final Object artifact : (Collection<?>) resolved)
+                    artifacts.add((Artifact) artifact);
+
+            return (DependencyIndex) scope.putAttributeIfAbsent(ATTRIBUTE,
+                    new DependencyIndex(projectKey, artifacts));
+        } catch (ExpressionEvaluationException e) {
+            throw new EnforcerRuleException(
+                    "Cannot index project dependencies", e);
+        }
+    }
+
+    private static String toKey(final Artifact artifact) {
+        return artifact.getGroupId() + ":" + artifact.getArtifactId();
+    }
+
+    /** Trail entries are ids, of the form {@code g:a:type[:c]:version}. */
+    private static String toKey(final String id) {
+        final int groupEnd = id.indexOf(':');
+        final int artifactEnd = id.indexOf(':', groupEnd + 1);
+        return -1 == artifactEnd ? id : id.substring(0, artifactEnd);
+    }
+
+    private List<String> toPath(final List<?> trail) {
+        final List<String> path = new ArrayList<String>();
+        if (null != trail)
+            for (final Object id : trail)
+                path.add(toKey(String.valueOf(id)));
+
+        if (path.isEmpty()) path.add(projectKey);
+        return Collections.unmodifiableList(path);
+    }
+
+    private static <V> void add(final Map<String, List<V>> index,
+            final String key, final V value) {
+        List<V> values = index.get(key);
+        if (null == values) {
+            values = new ArrayList<V>();
+            index.put(key, values);
+        }
+        values.add(value);
+    }
+
+    private static void add(final Map<String, Set<String>> index,
+            final String key, final String value) {
+        Set<String> values = index.get(key);
+        if (null == values) {
+            values = new LinkedHashSet<String>();
+            index.put(key, values);
+        }
+        values.add(value);
+    }
+
+    private static <V> Map<String, List<V>> freezeLists(
+            final Map<String, List<V>> index) {
+        for (final Map.Entry<String, List<V>> entry : index.entrySet())
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        return Collections.unmodifiableMap(index);
+    }
+
+    private static Map<String, Set<String>> freezeSets(
+            final Map<String, Set<String>> index) {
+        for (final Map.Entry<String, Set<String>> entry : index.entrySet())
+            entry.setValue(Collections.unmodifiableSet(entry.getValue()));
+        return Collections.unmodifiableMap(index);
+    }
+
+    private static <V> List<V> listOrEmpty(final List<V> values) {
+        return null == values ? Collections.<V>emptyList() : values;
+    }
+
+    private static Set<String> setOrEmpty(final Set<String> values) {
+        return null == values ? Collections.<String>emptySet() : values;
+    }
+
+    /**
+     * Get the key of the project this index was built for.
+     *
+     * @return the {@code groupId:artifactId} of the project.
+     */
+    public String getProjectKey() { return projectKey; }
+
+    /**
+     * Get the number of resolved artifacts.
+     *
+     * @return the number of artifacts in this index.
+     */
+    public int size() { return artifacts.size(); }
+
+    /**
+     * Get all resolved artifacts, in resolution order.
+     *
+     * @return the resolved artifacts.
+     */
+    public Collection<Artifact> getArtifacts() { return artifacts.values(); }
+
+    /**
+     * Check whether an artifact was resolved.
+     *
+     * @param groupId the group id.
+     * @param artifactId the artifact id.
+     * @return {@code true} if the artifact was resolved.
+     */
+    public boolean contains(final String groupId, final String artifactId) {
+        return artifacts.containsKey(groupId + ":" + artifactId);
+    }
+
+    /**
+     * Get a resolved artifact.
+     *
+     * @param groupId the group id.
+     * @param artifactId the artifact id.
+     * @return the artifact, or {@code null} if it was not resolved.
+     */
+    public Artifact get(final String groupId, final String artifactId) {
+        return get(groupId + ":" + artifactId);
+    }
+
+    /**
+     * Get a resolved artifact.
+     *
+     * @param key the {@code groupId:artifactId} of the artifact.
+     * @return the artifact, or {@code null} if it was not resolved.
+     */
+    public Artifact get(final String key) { return artifacts.get(key); }
+
+    /**
+     * Get the resolved artifacts with a given group id.
+     *
+     * @param groupId the group id.
+     * @return the matching artifacts, possibly empty.
+     */
+    public List<Artifact> getByGroupId(final String groupId) {
+        return listOrEmpty(byGroupId.get(groupId));
+    }
+
+    /**
+     * Get the resolved artifacts with a given scope.
+     *
+     * @param scope the scope, such as {@code compile}.
+     * @return the matching artifacts, possibly empty.
+     */
+    public List<Artifact> getByScope(final String scope) {
+        return listOrEmpty(byScope.get(scope));
+    }
+
+    /**
+     * Get the path through which an artifact was resolved.
+     *
+     * @param key the {@code groupId:artifactId} of the artifact.
+     * @return the keys from the project to the artifact inclusive, or an
+     * empty list if the artifact was not resolved.
+     */
+    public List<String> getPath(final String key) {
+        return listOrEmpty(paths.get(key));
+    }
+
+    /**
+     * Check whether an artifact was resolved other than as a direct
+     * dependency of the project.
+     *
+     * @param key the {@code groupId:artifactId} of the artifact.
+     * @return {@code true} if the artifact is a transitive dependency.
+     */
+    public boolean isTransitive(final String key) {
+        return 2 < getPath(key).size();
+    }
+
+    /**
+     * Get the artifacts resolved as dependencies of an artifact, or of the
+     * project itself.
+     *
+     * @param key the {@code groupId:artifactId} of the artifact or project.
+     * @return the keys of its dependencies, possibly empty.
+     */
+    public Set<String> getDependencies(final String key) {
+        return setOrEmpty(dependencies.get(key));
+    }
+
+    /**
+     * Get the artifacts, or the project, through which an artifact was
+     * resolved.
+     *
+     * @param key the {@code groupId:artifactId} of the artifact.
+     * @return the keys of its dependents, possibly empty.
+     */
+    public Set<String> getDependents(final String key) {
+        return setOrEmpty(dependents.get(key));
+    }
+
+    /**
+     * Get the artifacts whose resolution depended upon an artifact,
+     * directly or transitively.
+     *
+     * @param key the {@code groupId:artifactId} of the artifact.
+     * @return the keys of all artifacts resolved through it.
+     */
+    public Set<String> getTransitiveDependencies(final String key) {
+        final Set<String> found = new LinkedHashSet<String>();
+        final List<String> pending = new ArrayList<String>();
+        pending.add(key);
+        while (!pending.isEmpty()) {
+            for (final String dependency
+                    : getDependencies(pending.remove(pending.size() - 1)))
+                if (found.add(dependency)) pending.add(dependency);
+        }
+        return Collections.unmodifiableSet(found);
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.apache.commons.codec.digest.DigestUtils.md5Hex;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.enforcer.rule.api.EnforcerRuleException;
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.codehaus.plexus.component.configurator.expression.ExpressionEvaluationException;
+import org.codehaus.plexus.util.DirectoryScanner;
+
+/**
+ * A snapshot of the inputs a rule declares it depends upon: files (which
+ * may be globs), project properties and resolved dependencies.
+ *
+ * Files are compared by modification time and size, falling back to a
+ * comparison of their content only if the modification time alone has
+ * changed, so that checking a snapshot is cheap in the common case.
+ * Instances are immutable.
+ *
+ * @author dth
+ */
+final class InputSnapshot {
+    private final Map<String, FileStamp> files;
+    private final Map<String, String> properties;
+    private final String dependencies;
+
+    private InputSnapshot(final Map<String, FileStamp> files,
+            final Map<String, String> properties, final String dependencies) {
+        this.files = files;
+        this.properties = properties;
+        this.dependencies = dependencies;
+    }
+
+    /**
+     * Take a snapshot of the current state of a set of inputs.
+     *
+     * @param helper the helper to evaluate properties and dependencies with.
+     * @param watchedFiles the files to watch; any path segment containing
+     * {@code *} or {@code ?} is treated as an Ant style glob, directories
+     * are watched recursively, and relative paths are resolved against the
+     * base directory of the project.
+     * @param watchedProperties the names of the properties to watch.
+     * @param watchDependencies whether to watch the resolved dependencies
+     * of the project.
+     * @return the snapshot.
+     * @throws EnforcerRuleException if an input cannot be read.
+     */
+    static InputSnapshot take(final EnforcerRuleHelper helper,
+            final List<File> watchedFiles,
+            final List<String> watchedProperties,
+            final boolean watchDependencies) throws EnforcerRuleException {
+        final Map<String, FileStamp> files = new TreeMap<String, FileStamp>();
+        for (final File file : expand(helper, watchedFiles))
+            files.put(file.getAbsolutePath(), FileStamp.of(file, true));
+
+        return new InputSnapshot(files,
+                evaluateProperties(helper, watchedProperties),
+                watchDependencies ? dependencies(helper) : null);
+    }
+
+    /**
+     * Check whether the inputs are unchanged since this snapshot was taken.
+     *
+     * @param helper the helper to evaluate properties and dependencies with.
+     * @param watchedFiles the files to watch.
+     * @param watchedProperties the names of the properties to watch.
+     * @param watchDependencies whether to watch resolved dependencies.
+     * @return {@code true} if all inputs are unchanged.
+     * @throws EnforcerRuleException if an input cannot be read.
+     */
+    boolean isCurrent(final EnforcerRuleHelper helper,
+            final List<File> watchedFiles,
+            final List<String> watchedProperties,
+            final boolean watchDependencies) throws EnforcerRuleException {
+        if (!properties.equals(evaluateProperties(helper, watchedProperties)))
+            return false;
+
+        final String current =
+                watchDependencies ? dependencies(helper) : null;
+        if (!(null == dependencies
+                ? null == current : dependencies.equals(current)))
+            return false;
+
+        final List<File> expanded = expand(helper, watchedFiles);
+        if (expanded.size() != files.size()) return false;
+
+        for (final File file : expanded) {
+            final FileStamp previous = files.get(file.getAbsolutePath());
+            if (null == previous || !previous.matches(file)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get a digest of the content of all inputs, suitable for use as a
+     * persistent cache key.
+     *
+     * @return the hex encoded md5 digest of this snapshot.
+     */
+    String getDigest() {
+        final StringBuilder sb = new StringBuilder();
+        for (final Map.Entry<String, FileStamp> entry : files.entrySet())
+            sb.append("file=").append(entry.getKey())
+                .append(":").append(entry.getValue().contentHash)
+                .append(",");
+        for (final Map.Entry<String, String> entry : properties.entrySet())
+            sb.append("property=").append(entry.getKey())
+                .append(":").append(entry.getValue())
+                .append(",");
+        sb.append("dependencies=").append(dependencies);
+        return md5Hex(sb.toString());
+    }
+
+    private static List<File> expand(final EnforcerRuleHelper helper,
+            final List<File> watchedFiles) {
+        final List<File> expanded = new ArrayList<File>();
+        if (watchedFiles.isEmpty()) return expanded;
+
+        final File basedir = getBasedir(helper);
+        for (final File watched : watchedFiles) {
+            final String path = watched.getPath();
+            final File file = resolve(basedir, watched);
+            if (isGlob(path))
+                expand(basedir, path, expanded);
+            else if (file.isDirectory())
+                scan(file, "**", expanded);
+            else
+                expanded.add(file);
+        }
+        return expanded;
+    }
+
+    private static File getBasedir(final EnforcerRuleHelper helper) {
+        try {
+            final Object basedir = helper.evaluate("${project.basedir}");
+            if (basedir instanceof File) return (File) basedir;
+        } catch (ExpressionEvaluationException e) {
+            helper.getLog().debug("Cannot evaluate project basedir", e);
+        }
+        return new File(".");
+    }
+
+    private static File resolve(final File basedir, final File file) {
+        return file.isAbsolute() ? file : new File(basedir, file.getPath());
+    }
+
+    private static boolean isGlob(final String path) {
+        return -1 != path.indexOf('*') || -1 != path.indexOf('?');
+    }
+
+    private static void expand(final File basedir, final String glob,
+            final List<File> expanded) {
+        // Split into the literal base directory, and the pattern beneath it
+        File base = null;
+        final StringBuilder pattern = new StringBuilder();
+        for (final String segment : glob.split("[/\\\\]")) {
+            if (0 < pattern.length() || isGlob(segment)) {
+                if (0 < pattern.length()) pattern.append('/');
+                pattern.append(segment);
+            } else if (null == base) {
+                base = new File(toRoot(segment));
+            } else {
+                base = new File(base, segment);
+            }
+        }
+        scan(null == base ? basedir : resolve(basedir, base),
+                pattern.toString(), expanded);
+    }
+
+    /**
+     * Convert the first segment of a path to the root it denotes, if any;
+     * a bare Windows drive, such as {@code C:}, would be relative to the
+     * current directory of that drive.
+     */
+    private static String toRoot(final String segment) {
+        if (0 == segment.length()) return File.separator;
+        return segment.matches("[A-Za-z]:")
+                ? segment + File.separator : segment;
+    }
+
+    private static void scan(final File base, final String pattern,
+            final List<File> expanded) {
+        if (!base.isDirectory()) return;
+
+        final DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir(base);
+        scanner.setIncludes(new String[] { pattern });
+        scanner.scan();
+
+        final String[] included = scanner.getIncludedFiles();
+        Arrays.sort(included);
+        for (final String name : included)
+            expanded.add(new File(base, name));
+    }
+
+    private static Map<String, String> evaluateProperties(
+            final EnforcerRuleHelper helper, final List<String> names)
+            throws EnforcerRuleException {
+        final Map<String, String> values = new TreeMap<String, String>();
+        for (final String name : names)
+            values.put(name, String.valueOf(evaluate(helper, name)));
+        return values;
+    }
+
+    private static String dependencies(final EnforcerRuleHelper helper)
+            throws EnforcerRuleException {
+        final Object artifacts = evaluate(helper, "project.artifacts");
+        if (!(artifacts instanceof Collection<?>)) return "";
+
+        final List<String> ids = new ArrayList<String>();
+        for (final Object o : (Collection<?>) artifacts) {
+            final Artifact artifact = (Artifact) o;
+            ids.add(artifact.getId() + ":" + artifact.getScope());
+        }
+        Collections.sort(ids);
+        return md5Hex(ids.toString());
+    }
+
+    private static Object evaluate(final EnforcerRuleHelper helper,
+            final String name) throws EnforcerRuleException {
+        try {
+            return helper.evaluate("${" + name + "}");
+        } catch (ExpressionEvaluationException e) {
+            throw new EnforcerRuleException(
+                    "Cannot evaluate watched property: " + name, e);
+        }
+    }
+
+    private static final class FileStamp {
+        final long lastModified;
+        final long length;
+        final String contentHash;
+
+        private FileStamp(final long lastModified, final long length,
+                final String contentHash) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.contentHash = contentHash;
+        }
+
+        static FileStamp of(final File file, final boolean hash)
+                throws EnforcerRuleException {
+            if (!file.isFile()) return new FileStamp(-1L, -1L, "missing");
+
+            return new FileStamp(file.lastModified(), file.length(),
+                    hash ? hash(file) : null);
+        }
+
+        boolean matches(final File file) throws EnforcerRuleException {
+            final FileStamp current = of(file, false);
+            if (lastModified == current.lastModified
+                    && length == current.length)
+                return true;
+
+            // Touched but possibly unchanged, as after a fresh checkout
+            return length == current.length
+                    && contentHash.equals(hash(file));
+        }
+
+        private static String hash(final File file)
+                throws EnforcerRuleException {
+            try {
+                return ContentHashes.ofFile(file);
+            } catch (IOException e) {
+                throw new EnforcerRuleException(
+                        "Cannot read watched file: " + file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.apache.commons.lang3.StringEscapeUtils.escapeJava;
+import static org.apache.commons.lang3.StringUtils.join;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+/**
+ * A pseudo {@link ScriptEngine} for the {@code java} language, whose
+ * "scripts" are the names of {@link ScriptPredicate} implementations.
+ *
+ * Compiling a script loads and instantiates the named class, so that, via
+ * the compiled script cache of the {@link ScriptEnginePool}, each class is
+ * loaded once per build; evaluation simply invokes the predicate with the
+ * engine scope bindings. As predicates must be thread safe, the factory
+ * declares its engines {@code MULTITHREADED}, so that compiled predicates
+ * are shared between all engines of a pool.
+ *
+ * @author dth
+ */
+final class JavaPredicateEngine extends AbstractScriptEngine
+        implements Compilable {
+    /** The language name of this engine. */
+    static final String LANGUAGE = "java";
+
+    private static final ScriptEngineFactory FACTORY = new Factory();
+
+    /** {@inheritDoc} */
+    public CompiledScript compile(final String script)
+            throws ScriptException {
+        return new CompiledPredicate(this, loadPredicate(script.trim()));
+    }
+
+    /** {@inheritDoc} */
+    public CompiledScript compile(final Reader script)
+            throws ScriptException {
+        return compile(read(script));
+    }
+
+    /** {@inheritDoc} */
+    public Object eval(final String script, final ScriptContext context)
+            throws ScriptException {
+        return compile(script).eval(context);
+    }
+
+    /** {@inheritDoc} */
+    public Object eval(final Reader reader, final ScriptContext context)
+            throws ScriptException {
+        return compile(reader).eval(context);
+    }
+
+    /** {@inheritDoc} */
+    public Bindings createBindings() { return new SimpleBindings(); }
+
+    /** {@inheritDoc} */
+    public ScriptEngineFactory getFactory() { return FACTORY; }
+
+    private ScriptPredicate loadPredicate(final String className)
+            throws ScriptException {
+        final Class<?> type;
+        try {
+            type = Class.forName(className, true, contextClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new ScriptException("Predicate class not found: "
+                    + className);
+        }
+
+        if (!ScriptPredicate.class.isAssignableFrom(type))
+            throw new ScriptException(className + " does not implement "
+                    + ScriptPredicate.class.getName());
+
+        try {
+            return (ScriptPredicate) type.newInstance();
+        } catch (InstantiationException e) {
+            throw new ScriptException(e);
+        } catch (IllegalAccessException e) {
+            throw new ScriptException(e);
+        }
+    }
+
+    private static ClassLoader contextClassLoader() {
+        final ClassLoader loader =
+                Thread.currentThread().getContextClassLoader();
+        return null == loader
+                ? JavaPredicateEngine.class.getClassLoader() : loader;
+    }
+
+    private static String read(final Reader reader) throws ScriptException {
+        final StringBuilder sb = new StringBuilder();
+        final char[] buffer = new char[256];
+        try {
+            for (int n = reader.read(buffer); -1 != n; n = reader.read(buffer))
+                sb.append(buffer, 0, n);
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        }
+        return sb.toString();
+    }
+
+    private static final class CompiledPredicate extends CompiledScript {
+        private final ScriptEngine engine;
+        private final ScriptPredicate predicate;
+
+        CompiledPredicate(final ScriptEngine engine,
+                final ScriptPredicate predicate) {
+            this.engine = engine;
+            this.predicate = predicate;
+        }
+
+        public Object eval(final ScriptContext context)
+                throws ScriptException {
+            try {
+                return predicate.test(
+                        context.getBindings(ScriptContext.ENGINE_SCOPE));
+            } catch (ScriptException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new ScriptException(e);
+            }
+        }
+
+        public ScriptEngine getEngine() { return engine; }
+    }
+
+    private static final class Factory implements ScriptEngineFactory {
+        public String getEngineName() { return "Java Predicate Engine"; }
+
+        public String getEngineVersion() { return "1.0"; }
+
+        public List<String> getExtensions() {
+            return Collections.emptyList();
+        }
+
+        public List<String> getMimeTypes() {
+            return Collections.emptyList();
+        }
+
+        public List<String> getNames() { return Arrays.asList(LANGUAGE); }
+
+        public String getLanguageName() { return LANGUAGE; }
+
+        public String getLanguageVersion() {
+            return System.getProperty("java.specification.version");
+        }
+
+        public Object getParameter(final String key) {
+            if (ScriptEngine.NAME.equals(key)) return LANGUAGE;
+            if (ScriptEngine.ENGINE.equals(key)) return getEngineName();
+            if (ScriptEngine.ENGINE_VERSION.equals(key))
+                return getEngineVersion();
+            if (ScriptEngine.LANGUAGE.equals(key)) return LANGUAGE;
+            if (ScriptEngine.LANGUAGE_VERSION.equals(key))
+                return getLanguageVersion();
+            if ("THREADING".equals(key)) return "MULTITHREADED";
+            return null;
+        }
+
+        /*
+         * The following use Java syntax, for the benefit of generic script
+         * tooling, although this engine cannot evaluate such source.
+         */
+
+        public String getMethodCallSyntax(final String obj, final String m,
+                final String... args) {
+            return obj + "." + m + "(" + join(args, ", ") + ")";
+        }
+
+        public String getOutputStatement(final String toDisplay) {
+            return "System.out.print(\"" + escapeJava(toDisplay) + "\")";
+        }
+
+        public String getProgram(final String... statements) {
+            final StringBuilder sb = new StringBuilder();
+            for (final String statement : statements)
+                sb.append(statement).append(";\n");
+            return sb.toString();
+        }
+
+        public ScriptEngine getScriptEngine() {
+            return new JavaPredicateEngine();
+        }
+    }
+}
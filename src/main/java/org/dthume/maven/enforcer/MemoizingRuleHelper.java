@@ -0,0 +1,167 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.component.configurator.expression.ExpressionEvaluationException;
+import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
+
+/**
+ * A facade over an {@link EnforcerRuleHelper} which evaluates expressions
+ * and looks up components lazily, on first access, and memoizes the results
+ * for the remainder of a single script evaluation.
+ *
+ * Scripts which touch few properties therefore pay for only those they use,
+ * and scripts which repeatedly access the same property pay only once.
+ * Failed evaluations and lookups are not memoized. Instances are not thread
+ * safe.
+ *
+ * @author dth
+ */
+public final class MemoizingRuleHelper {
+    /** Stands in for memoized {@code null} values. */
+    private static final Object NULL = new Object();
+
+    private final EnforcerRuleHelper helper;
+
+    private final Map<String, Object> expressions =
+            new HashMap<String, Object>();
+
+    private final Map<String, Object> components =
+            new HashMap<String, Object>();
+
+    /**
+     * Create a facade over a rule helper.
+     *
+     * @param helper the helper to delegate to.
+     */
+    public MemoizingRuleHelper(final EnforcerRuleHelper helper) {
+        this.helper = helper;
+    }
+
+    /**
+     * Evaluate an expression, such as {@code ${project.version}}.
+     *
+     * @param expression the expression to evaluate.
+     * @return the value of the expression, which may be {@code null}.
+     * @throws ExpressionEvaluationException if the expression cannot be
+     * evaluated.
+     */
+    public Object evaluate(final String expression)
+            throws ExpressionEvaluationException {
+        Object value = expressions.get(expression);
+        if (null == value) {
+            value = helper.evaluate(expression);
+            expressions.put(expression, null == value ? NULL : value);
+            return value;
+        }
+        return NULL == value ? null : value;
+    }
+
+    /**
+     * Get the value of a property, such as {@code project.version}; this is
+     * equivalent to evaluating <code>${name}</code>.
+     *
+     * @param name the name of the property.
+     * @return the value of the property, which may be {@code null}.
+     * @throws ExpressionEvaluationException if the property cannot be
+     * evaluated.
+     */
+    public Object property(final String name)
+            throws ExpressionEvaluationException {
+        return evaluate("${" + name + "}");
+    }
+
+    /**
+     * Get the current project.
+     *
+     * @return the current {@code MavenProject}.
+     * @throws ExpressionEvaluationException if the project cannot be
+     * evaluated.
+     */
+    public Object getProject() throws ExpressionEvaluationException {
+        return evaluate("${project}");
+    }
+
+    /**
+     * Get the current session.
+     *
+     * @return the current {@code MavenSession}.
+     * @throws ExpressionEvaluationException if the session cannot be
+     * evaluated.
+     */
+    public Object getSession() throws ExpressionEvaluationException {
+        return evaluate("${session}");
+    }
+
+    /**
+     * Look up a component by role.
+     *
+     * @param role the component role.
+     * @return the component.
+     * @throws ComponentLookupException if the lookup fails.
+     */
+    public Object getComponent(final String role)
+            throws ComponentLookupException {
+        Object component = components.get(role);
+        if (null == component) {
+            component = helper.getComponent(role);
+            components.put(role, component);
+        }
+        return component;
+    }
+
+    /**
+     * Look up a component by role and hint.
+     *
+     * @param role the component role.
+     * @param hint the role hint.
+     * @return the component.
+     * @throws ComponentLookupException if the lookup fails.
+     */
+    public Object getComponent(final String role, final String hint)
+            throws ComponentLookupException {
+        final String key = role + "#" + hint;
+        Object component = components.get(key);
+        if (null == component) {
+            component = helper.getComponent(role, hint);
+            components.put(key, component);
+        }
+        return component;
+    }
+
+    /**
+     * Get the log of the underlying helper.
+     *
+     * @return the log.
+     */
+    public Log getLog() { return helper.getLog(); }
+
+    /**
+     * Get the underlying helper, for operations not provided by this facade.
+     *
+     * @return the underlying, non memoizing, helper.
+     */
+    public EnforcerRuleHelper getHelper() { return helper; }
+}
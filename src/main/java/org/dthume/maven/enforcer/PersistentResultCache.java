@@ -0,0 +1,236 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * An on-disk record of successful rule executions, which survives across
+ * Maven invocations.
+ *
+ * The index is an append-only file of fixed size records, each holding a
+ * 16 byte md5 key followed by the 8 byte time at which it was recorded.
+ * When the number of distinct keys exceeds the configured maximum, or the
+ * file holds too many superseded records, it is compacted, retaining only the
+ * most recently recorded keys.
+ *
+ * @author dth
+ */
+final class PersistentResultCache {
+    /** The name of the index file within the cache directory. */
+    static final String INDEX_FILE_NAME = "script-rule-results.idx";
+
+    /** The default maximum number of keys retained. */
+    static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    private static final int KEY_SIZE = 16;
+    private static final int RECORD_SIZE = KEY_SIZE + 8;
+
+    private static final ConcurrentMap<File, PersistentResultCache> CACHES =
+            new ConcurrentHashMap<File, PersistentResultCache>();
+
+    private final File index;
+
+    /** Recorded keys in hex, mapped to the time they were recorded. */
+    private final Map<String, Long> entries = new LinkedHashMap<String, Long>();
+
+    private boolean loaded = false;
+
+    /** The number of records in the index file, including superseded ones. */
+    private int records = 0;
+
+    private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    private PersistentResultCache(final File index) {
+        this.index = index;
+    }
+
+    /**
+     * Get the shared cache for a directory.
+     *
+     * @param directory the directory to hold the cache index.
+     * @param maxEntries the maximum number of keys to retain.
+     * @return the cache for {@code directory}.
+     * @throws IOException if the directory cannot be resolved.
+     */
+    static PersistentResultCache forDirectory(final File directory,
+            final int maxEntries) throws IOException {
+        final File index =
+                new File(directory, INDEX_FILE_NAME).getCanonicalFile();
+
+        PersistentResultCache cache = CACHES.get(index);
+        if (null == cache) {
+            cache = new PersistentResultCache(index);
+            final PersistentResultCache existing =
+                    CACHES.putIfAbsent(index, cache);
+            if (null != existing) cache = existing;
+        }
+        cache.maxEntries = Math.max(1, maxEntries);
+        return cache;
+    }
+
+    /**
+     * Check if a key has previously been recorded.
+     *
+     * @param key the hex encoded md5 key to look up.
+     * @return {@code true} if {@code key} has been recorded.
+     * @throws IOException if the index cannot be read.
+     */
+    synchronized boolean contains(final String key) throws IOException {
+        load();
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Record a key, marking the inputs it represents as successful.
+     *
+     * @param key the hex encoded md5 key to record.
+     * @throws IOException if the index cannot be written.
+     */
+    synchronized void record(final String key) throws IOException {
+        load();
+
+        final long now = System.currentTimeMillis();
+        entries.remove(key);
+        entries.put(key, Long.valueOf(now));
+
+        if (entries.size() > maxEntries || records >= 2 * maxEntries)
+            compact();
+        else
+            append(key, now);
+    }
+
+    private void load() throws IOException {
+        if (loaded) return;
+        loaded = true;
+
+        if (!index.isFile()) return;
+
+        final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(index)));
+        try {
+            final byte[] key = new byte[KEY_SIZE];
+            while (true) {
+                in.readFully(key);
+                final long time = in.readLong();
+                final String hex = new String(Hex.encodeHex(key));
+                entries.remove(hex);
+                entries.put(hex, Long.valueOf(time));
+                records++;
+            }
+        } catch (EOFException e) {
+            // End of index; any trailing partial record is ignored
+        } finally {
+            in.close();
+        }
+    }
+
+    private void append(final String key, final long time)
+            throws IOException {
+        createDirectory();
+
+        final RandomAccessFile file = new RandomAccessFile(index, "rw");
+        try {
+            final FileChannel channel = file.getChannel();
+            final FileLock lock = channel.lock();
+            try {
+                final long length = channel.size();
+                channel.position(length - length % RECORD_SIZE);
+                channel.write(toRecord(key, time));
+                records++;
+            } finally {
+                lock.release();
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    private void compact() throws IOException {
+        createDirectory();
+
+        // Entries are held in the order they were (last) recorded
+        final Map<String, Long> retained = new LinkedHashMap<String, Long>();
+        int skip = entries.size() - maxEntries;
+        for (final Map.Entry<String, Long> entry : entries.entrySet()) {
+            if (0 < skip) {
+                skip--;
+                continue;
+            }
+            retained.put(entry.getKey(), entry.getValue());
+        }
+
+        final File tmp = new File(index.getPath() + ".tmp");
+        final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            for (final Map.Entry<String, Long> entry : retained.entrySet())
+                out.write(toRecord(entry.getKey(),
+                        entry.getValue().longValue()).array());
+        } finally {
+            out.close();
+        }
+
+        if (!(tmp.renameTo(index) || (index.delete() && tmp.renameTo(index))))
+            throw new IOException("Cannot replace cache index: " + index);
+
+        entries.clear();
+        entries.putAll(retained);
+        records = retained.size();
+    }
+
+    private void createDirectory() throws IOException {
+        final File dir = index.getParentFile();
+        if (!(dir.isDirectory() || dir.mkdirs()))
+            throw new IOException("Cannot create cache directory: " + dir);
+    }
+
+    private ByteBuffer toRecord(final String key, final long time)
+            throws IOException {
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        try {
+            record.put(Hex.decodeHex(key.toCharArray()), 0, KEY_SIZE);
+        } catch (DecoderException e) {
+            throw new IllegalArgumentException("Invalid key: " + key);
+        }
+        record.putLong(time);
+        record.flip();
+        return record;
+    }
+}
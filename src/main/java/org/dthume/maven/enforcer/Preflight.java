@@ -0,0 +1,227 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.apache.commons.codec.digest.DigestUtils.md5Hex;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.script.Compilable;
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleException;
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Checks, once per session, that the environment a rule needs is in
+ * place: that an engine is available for its language, that its script
+ * files are readable in a supported encoding and, optionally, that its
+ * scripts compile and that its engine can invoke functions.
+ * Misconfigured rules thus fail immediately, with a clear message, rather
+ * than part way through evaluation.
+ *
+ * Successful checks are recorded in the session scope, keyed by language,
+ * scripts and the size and modification time of script files, so that
+ * later executions of the same rule skip them.
+ *
+ * @author dth
+ */
+final class Preflight {
+    /** The prefix of the session scope attributes recording checks. */
+    private static final String ATTRIBUTE = Preflight.class.getName();
+
+    private final String language;
+    private final boolean syntaxCheck;
+    private boolean invocable = false;
+    private final List<String> scripts = new ArrayList<String>();
+    private final List<File> scriptFiles = new ArrayList<File>();
+
+    /**
+     * Create a preflight check.
+     *
+     * @param language the scripting language.
+     * @param syntaxCheck whether to compile the scripts.
+     */
+    Preflight(final String language, final boolean syntaxCheck) {
+        this.language = language;
+        this.syntaxCheck = syntaxCheck;
+    }
+
+    /**
+     * Add a script to check.
+     *
+     * @param script the inline script, or blank for none.
+     * @param scriptFile the script file, or {@code null} for none.
+     * @return this check.
+     */
+    Preflight add(final String script, final File scriptFile) {
+        if (!isBlank(script)) scripts.add(script);
+        if (null != scriptFile) scriptFiles.add(scriptFile);
+        return this;
+    }
+
+    /**
+     * Set whether the engine must be able to invoke functions, as it must
+     * to treat the scripts as a library.
+     *
+     * @param invocable whether to require an {@link Invocable} engine.
+     * @return this check.
+     */
+    Preflight requireInvocable(final boolean invocable) {
+        this.invocable = invocable;
+        return this;
+    }
+
+    /**
+     * Run the checks, unless they have already passed in this session.
+     *
+     * @param helper the rule helper.
+     * @throws EnforcerRuleException if a check fails.
+     */
+    void run(final EnforcerRuleHelper helper) throws EnforcerRuleException {
+        final String encoding = scriptFiles.isEmpty()
+                ? null : ScriptEvaluation.getSourceEncoding(helper);
+
+        final RuleScope session = RuleScope.session(helper);
+        final String key = ATTRIBUTE + "." + md5Hex(toKey(encoding));
+        if (null != session.getAttribute(key)) return;
+
+        check(helper, encoding);
+        session.putAttributeIfAbsent(key, Boolean.TRUE);
+    }
+
+    private String toKey(final String encoding) {
+        final StringBuilder sb = new StringBuilder(String.valueOf(language))
+            .append(",syntaxCheck=").append(syntaxCheck)
+            .append(",invocable=").append(invocable)
+            .append(",encoding=").append(encoding);
+        for (final String script : scripts)
+            sb.append(",script=").append(md5Hex(script));
+        for (final File file : scriptFiles)
+            sb.append(",file=").append(file.getAbsolutePath())
+                .append(":").append(file.lastModified())
+                .append(":").append(file.length());
+        return sb.toString();
+    }
+
+    private void check(final EnforcerRuleHelper helper, final String encoding)
+            throws EnforcerRuleException {
+        if (null != encoding) checkEncoding(encoding);
+        for (final File file : scriptFiles)
+            checkFile(file);
+
+        final Log log = helper.getLog();
+        final ScriptEnginePool pool =
+                ScriptEnginePool.forLanguage(helper, language);
+        final ScriptEngine engine = pool.borrow();
+        if (null == engine)
+            throw new EnforcerRuleException(String.format(
+                    "No script engine available for language: %s; "
+                    + "available languages are %s",
+                    language, pool.getAvailableLanguages()));
+
+        try {
+            if (log.isDebugEnabled())
+                log.debug(String.format(
+                        "Engine for %s: compilable=%b, invocable=%b",
+                        language, engine instanceof Compilable,
+                        engine instanceof Invocable));
+
+            if (invocable && !(engine instanceof Invocable))
+                throw new EnforcerRuleException(String.format(
+                        "Script engine for language %s cannot invoke "
+                        + "functions; remove the function parameter or "
+                        + "use another language", language));
+
+            if (syntaxCheck) checkSyntax(log, pool, engine, encoding);
+        } finally {
+            pool.release(engine);
+        }
+    }
+
+    private void checkEncoding(final String encoding)
+            throws EnforcerRuleException {
+        boolean supported;
+        try {
+            supported = Charset.isSupported(encoding);
+        } catch (IllegalCharsetNameException e) {
+            supported = false;
+        }
+        if (!supported)
+            throw new EnforcerRuleException(
+                    "Unsupported source encoding: " + encoding);
+    }
+
+    private void checkFile(final File file) throws EnforcerRuleException {
+        if (!file.isFile())
+            throw new EnforcerRuleException(
+                    "Script file not found: " + file.getAbsolutePath());
+        if (!file.canRead())
+            throw new EnforcerRuleException(
+                    "Cannot read script file: " + file.getAbsolutePath());
+    }
+
+    private void checkSyntax(final Log log, final ScriptEnginePool pool,
+            final ScriptEngine engine, final String encoding)
+            throws EnforcerRuleException {
+        if (!(engine instanceof Compilable)) {
+            log.warn("Cannot check syntax, as the engine for " + language
+                    + " does not support compilation");
+            return;
+        }
+
+        for (final String script : scripts)
+            precompile(pool, engine, script, null, null);
+
+        for (final File file : scriptFiles) {
+            final String source;
+            try {
+                source = ScriptSources.read(file, encoding);
+            } catch (IOException e) {
+                throw new EnforcerRuleException(
+                        "Cannot read script file: " + file, e);
+            }
+            precompile(pool, engine, source, encoding, file.getPath());
+        }
+    }
+
+    private void precompile(final ScriptEnginePool pool,
+            final ScriptEngine engine, final String source,
+            final String encoding, final String name)
+            throws EnforcerRuleException {
+        try {
+            // Compiled scripts are cached, so this is not wasted
+            pool.precompile(engine, source, encoding, name);
+        } catch (ScriptException e) {
+            throw new EnforcerRuleException("Syntax error in "
+                    + (null == name ? "inline script" : name) + ": "
+                    + e.getMessage(), e);
+        }
+    }
+}
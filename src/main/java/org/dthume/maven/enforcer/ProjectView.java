@@ -0,0 +1,236 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleException;
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.component.configurator.expression.ExpressionEvaluationException;
+
+/**
+ * A read-only view of the model of a project, for scripts which should not
+ * be able to modify the project or reach the container through it.
+ *
+ * Views are backed directly by the project model rather than copying it,
+ * so are cheap to create and always current; the elements of each list are
+ * wrapped in views of their own as they are accessed. A view holds its
+ * project weakly, as it is cached in the scope owned by that project.
+ *
+ * @author dth
+ */
+public final class ProjectView {
+    /** The project scope attribute holding the view of the project. */
+    private static final String ATTRIBUTE = ProjectView.class.getName();
+
+    private final WeakReference<MavenProject> project;
+
+    /**
+     * Create a view of a project.
+     *
+     * @param project the project to view.
+     */
+    ProjectView(final MavenProject project) {
+        this.project = new WeakReference<MavenProject>(project);
+    }
+
+    /**
+     * Get a view of the current project, creating it on first use.
+     *
+     * @param helper the helper to look up the project with.
+     * @return a view of the current project.
+     * @throws EnforcerRuleException if the project cannot be evaluated.
+     */
+    static ProjectView forProject(final EnforcerRuleHelper helper)
+            throws EnforcerRuleException {
+        final RuleScope scope = RuleScope.project(helper);
+        final Object view = scope.getAttribute(ATTRIBUTE);
+        if (null != view) return (ProjectView) view;
+
+        final Object project;
+        try {
+            project = helper.evaluate("${project}");
+        } catch (ExpressionEvaluationException e) {
+            throw new EnforcerRuleException("Cannot evaluate project", e);
+        }
+        if (!(project instanceof MavenProject))
+            throw new EnforcerRuleException("Cannot evaluate project");
+
+        return (ProjectView) scope.putAttributeIfAbsent(ATTRIBUTE,
+                new ProjectView((MavenProject) project));
+    }
+
+    private MavenProject project() {
+        final MavenProject viewed = project.get();
+        if (null == viewed)
+            throw new IllegalStateException("Project is no longer available");
+        return viewed;
+    }
+
+    /** @return the group id of the project. */
+    public String getGroupId() { return project().getGroupId(); }
+
+    /** @return the artifact id of the project. */
+    public String getArtifactId() { return project().getArtifactId(); }
+
+    /** @return the version of the project. */
+    public String getVersion() { return project().getVersion(); }
+
+    /** @return the packaging of the project. */
+    public String getPackaging() { return project().getPackaging(); }
+
+    /** @return the name of the project, which may be {@code null}. */
+    public String getName() { return project().getName(); }
+
+    /** @return the {@code groupId:artifactId} of the project. */
+    public String getKey() { return getGroupId() + ":" + getArtifactId(); }
+
+    /**
+     * Get a property of the project.
+     *
+     * @param name the name of the property.
+     * @return the value of the property, or {@code null} if not set.
+     */
+    public String getProperty(final String name) {
+        return project().getProperties().getProperty(name);
+    }
+
+    /** @return an unmodifiable view of the properties of the project. */
+    public Map<Object, Object> getProperties() {
+        return Collections.unmodifiableMap(project().getProperties());
+    }
+
+    /** @return views of the declared dependencies of the project. */
+    public List<DependencyView> getDependencies() {
+        return new ViewList<DependencyView>(project().getDependencies()) {
+            DependencyView view(final Object element) {
+                return new DependencyView((Dependency) element);
+            }
+        };
+    }
+
+    /** @return views of the build plugins of the project. */
+    public List<PluginView> getPlugins() {
+        return new ViewList<PluginView>(project().getBuildPlugins()) {
+            PluginView view(final Object element) {
+                return new PluginView((Plugin) element);
+            }
+        };
+    }
+
+    /** {@inheritDoc} */
+    public String toString() { return project().getId(); }
+
+    /**
+     * An unmodifiable list which wraps the elements of another list in
+     * views as they are accessed.
+     */
+    private abstract static class ViewList<V> extends AbstractList<V> {
+        private final List<?> elements;
+
+        ViewList(final List<?> elements) {
+            this.elements = null == elements
+                    ? Collections.emptyList() : elements;
+        }
+
+        abstract V view(Object element);
+
+        public V get(final int index) { return view(elements.get(index)); }
+
+        public int size() { return elements.size(); }
+    }
+
+    /**
+     * A read-only view of a declared dependency.
+     */
+    public static final class DependencyView {
+        private final Dependency dependency;
+
+        DependencyView(final Dependency dependency) {
+            this.dependency = dependency;
+        }
+
+        /** @return the group id of the dependency. */
+        public String getGroupId() { return dependency.getGroupId(); }
+
+        /** @return the artifact id of the dependency. */
+        public String getArtifactId() { return dependency.getArtifactId(); }
+
+        /** @return the version of the dependency. */
+        public String getVersion() { return dependency.getVersion(); }
+
+        /** @return the type of the dependency. */
+        public String getType() { return dependency.getType(); }
+
+        /** @return the classifier of the dependency, or {@code null}. */
+        public String getClassifier() { return dependency.getClassifier(); }
+
+        /** @return the scope of the dependency, or {@code null}. */
+        public String getScope() { return dependency.getScope(); }
+
+        /** @return whether the dependency is optional. */
+        public boolean isOptional() { return dependency.isOptional(); }
+
+        /** @return the {@code groupId:artifactId} of the dependency. */
+        public String getKey() {
+            return getGroupId() + ":" + getArtifactId();
+        }
+
+        /** {@inheritDoc} */
+        public String toString() {
+            return getKey() + ":" + getVersion();
+        }
+    }
+
+    /**
+     * A read-only view of a build plugin.
+     */
+    public static final class PluginView {
+        private final Plugin plugin;
+
+        PluginView(final Plugin plugin) {
+            this.plugin = plugin;
+        }
+
+        /** @return the group id of the plugin. */
+        public String getGroupId() { return plugin.getGroupId(); }
+
+        /** @return the artifact id of the plugin. */
+        public String getArtifactId() { return plugin.getArtifactId(); }
+
+        /** @return the version of the plugin, which may be {@code null}. */
+        public String getVersion() { return plugin.getVersion(); }
+
+        /** @return the {@code groupId:artifactId} of the plugin. */
+        public String getKey() { return plugin.getKey(); }
+
+        /** {@inheritDoc} */
+        public String toString() {
+            return getKey() + ":" + getVersion();
+        }
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * The rule executions recorded during a single Maven session, summarised
+ * and optionally reported once the last rule of the last module of the
+ * reactor has finished.
+ *
+ * The enforcer plugin offers no notification of the end of a session, but
+ * configures every rule of an execution, on the thread running the module,
+ * before running any of them. Rules therefore report being configured and
+ * finishing, and the summary is logged, and reports written, once, when no
+ * configured rule remains pending on a thread which has run a rule for the
+ * last module in reactor order; without a reactor, as in a single module
+ * build, every module is the last. Executions recorded later still, as may
+ * happen in parallel builds, are only logged at debug level. Rules which
+ * are configured but never run, as when the enforcer is skipped, remain
+ * pending, so no summary is logged by their thread.
+ *
+ * @author dth
+ */
+final class RuleMetrics {
+    /** The session scope attribute holding the metrics for the session. */
+    private static final String ATTRIBUTE = RuleMetrics.class.getName();
+
+    private static final String SUMMARY_FORMAT =
+            "%-24.24s %-24.24s %-8s %-7s %-5s %9s %9s %9s %9s %9s";
+
+    /**
+     * The rules of the current execution on each thread: the number still
+     * pending, whether any has finished, and whether any has run for the
+     * last module. Only primitives are held, so no class loader is pinned.
+     */
+    private static final ThreadLocal<int[]> PENDING =
+            new ThreadLocal<int[]>() {
+                protected int[] initialValue() { return new int[3]; }
+            };
+
+    /** The recorded executions; guarded by {@code this}. */
+    private final List<Record> records = new ArrayList<Record>();
+
+    /** The files to write reports to; the format follows the extension. */
+    private final ConcurrentMap<File, Boolean> reportFiles =
+            new ConcurrentHashMap<File, Boolean>();
+
+    /** Whether the summary has been logged. */
+    private final AtomicBoolean summarised = new AtomicBoolean();
+
+    /**
+     * Get the metrics for the current Maven session.
+     *
+     * @param helper the helper to look up the session with.
+     * @return the session metrics, never {@code null}.
+     */
+    static RuleMetrics forSession(final EnforcerRuleHelper helper) {
+        final RuleScope scope = RuleScope.session(helper);
+        final Object metrics = scope.getAttribute(ATTRIBUTE);
+        return null != metrics ? (RuleMetrics) metrics
+                : (RuleMetrics) scope.putAttributeIfAbsent(ATTRIBUTE,
+                        new RuleMetrics());
+    }
+
+    /**
+     * Note that a rule has been configured on the current thread, and will
+     * finish there.
+     */
+    static void configured() {
+        final int[] pending = PENDING.get();
+        // A rule configured after another finished starts a new execution
+        if (0 != pending[1]) Arrays.fill(pending, 0);
+        pending[0]++;
+    }
+
+    /**
+     * Note that a rule configured on the current thread has finished, and
+     * log the session summary and write the reports if it was the last
+     * pending rule, and a rule has run for the last module.
+     *
+     * @param helper the helper of the module the rule ran for, or of the
+     * module which cached its result; may be {@code null}.
+     * @param executed whether the rule ran for the current module, rather
+     * than its cached result being reused.
+     */
+    static void finished(final EnforcerRuleHelper helper,
+            final boolean executed) {
+        final int[] pending = PENDING.get();
+        pending[1] = 1;
+        if (0 < pending[0]) pending[0]--;
+        if (null == helper) return;
+
+        if (executed && isLastModule(helper)) pending[2] = 1;
+        if (0 != pending[0] || 0 == pending[2]) return;
+
+        final Object metrics =
+                RuleScope.session(helper).getAttribute(ATTRIBUTE);
+        if (null != metrics)
+            ((RuleMetrics) metrics).summarise(helper.getLog());
+    }
+
+    /**
+     * Record a rule execution.
+     *
+     * @param record the execution to record.
+     * @param reportFile the file to write a report to, or {@code null}.
+     * @param helper the helper to log with.
+     */
+    void record(final Record record, final File reportFile,
+            final EnforcerRuleHelper helper) {
+        synchronized (this) {
+            records.add(record);
+        }
+
+        if (null != reportFile)
+            reportFiles.put(reportFile.getAbsoluteFile(), Boolean.TRUE);
+
+        final Log log = helper.getLog();
+        if (summarised.get() && log.isDebugEnabled()) {
+            log.debug("Script rule metrics: execution recorded after the"
+                    + " summary");
+            log.debug(formatRecord(record));
+        }
+    }
+
+    /**
+     * Log the session summary and write the reports, unless already done.
+     *
+     * @param log the log to write the summary to.
+     */
+    void summarise(final Log log) {
+        if (!summarised.compareAndSet(false, true)) return;
+
+        logSummary(log);
+        writeReports(log);
+    }
+
+    private static boolean isLastModule(final EnforcerRuleHelper helper) {
+        final List<String> reactor = AggregateFacts.reactorKeys(helper);
+        return reactor.isEmpty() || reactor.get(reactor.size() - 1)
+                .equals(AggregateFacts.moduleKey(helper));
+    }
+
+    /**
+     * Get a snapshot of the executions recorded so far.
+     *
+     * @return the recorded executions, in order of completion.
+     */
+    synchronized List<Record> getRecords() {
+        return new ArrayList<Record>(records);
+    }
+
+    private void writeReports(final Log log) {
+        for (final File file : reportFiles.keySet()) {
+            try {
+                writeReport(file);
+            } catch (IOException e) {
+                log.warn("Cannot write script rule metrics to " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Log a table summarising the executions recorded so far.
+     *
+     * @param log the log to write the summary to.
+     */
+    void logSummary(final Log log) {
+        final List<Record> snapshot = getRecords();
+
+        long total = 0L;
+        for (final Record record : snapshot)
+            total += record.totalNanos;
+
+        log.info(String.format(
+                "Script rule metrics: %d executions, %s ms in total",
+                snapshot.size(), toMillis(total)));
+        log.info(String.format(SUMMARY_FORMAT, "module", "rule", "phase",
+                "outcome", "cache", "acquire", "compile", "eval", "cpu",
+                "total"));
+
+        for (final Record r : snapshot)
+            log.info(formatRecord(r));
+    }
+
+    private static String formatRecord(final Record r) {
+        return String.format(SUMMARY_FORMAT, r.module, r.rule, r.phase,
+                r.outcome, r.resultCache, toMillis(r.acquireNanos),
+                toMillis(r.compileNanos), toMillis(r.evalNanos),
+                toMillis(r.cpuNanos), toMillis(r.totalNanos));
+    }
+
+    /**
+     * Write a report of the executions recorded so far, as CSV if the name
+     * of {@code file} ends with {@code .csv}, and otherwise as JSON.
+     *
+     * @param file the file to write.
+     * @throws IOException if the report cannot be written.
+     */
+    void writeReport(final File file) throws IOException {
+        final File parent = file.getParentFile();
+        if (null != parent && !parent.isDirectory() && !parent.mkdirs())
+            throw new IOException("Cannot create directory: " + parent);
+
+        final Writer out =
+                new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            if (file.getName().toLowerCase(Locale.ENGLISH).endsWith(".csv"))
+                writeCsv(out);
+            else
+                writeJson(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeCsv(final Writer out) throws IOException {
+        out.write("module,rule,phase,outcome,resultCache,compileHits,"
+                + "compileMisses,acquireMillis,compileMillis,evalMillis,"
+                + "cpuMillis,totalMillis\n");
+
+        for (final Record r : getRecords()) {
+            out.write(toCsv(r.module) + "," + toCsv(r.rule) + ","
+                    + r.phase + "," + r.outcome + "," + r.resultCache + ","
+                    + r.compileHits + "," + r.compileMisses + ","
+                    + toMillis(r.acquireNanos) + ","
+                    + toMillis(r.compileNanos) + ","
+                    + toMillis(r.evalNanos) + ","
+                    + toMillis(r.cpuNanos) + ","
+                    + toMillis(r.totalNanos) + "\n");
+        }
+    }
+
+    private void writeJson(final Writer out) throws IOException {
+        out.write("[");
+        String separator = "\n";
+        for (final Record r : getRecords()) {
+            out.write(separator);
+            out.write("  {\"module\": " + toJson(r.module)
+                    + ", \"rule\": " + toJson(r.rule)
+                    + ", \"phase\": " + toJson(r.phase)
+                    + ", \"outcome\": " + toJson(r.outcome)
+                    + ", \"resultCache\": " + toJson(r.resultCache)
+                    + ", \"compileHits\": " + r.compileHits
+                    + ", \"compileMisses\": " + r.compileMisses
+                    + ", \"acquireMillis\": " + toMillis(r.acquireNanos)
+                    + ", \"compileMillis\": " + toMillis(r.compileNanos)
+                    + ", \"evalMillis\": " + toMillis(r.evalNanos)
+                    + ", \"cpuMillis\": " + toMillis(r.cpuNanos)
+                    + ", \"totalMillis\": " + toMillis(r.totalNanos) + "}");
+            separator = ",\n";
+        }
+        out.write("\n]\n");
+    }
+
+    private static String toMillis(final long nanos) {
+        // Reports are machine readable, so never use a localised separator
+        return String.format(Locale.ENGLISH, "%.3f", nanos / 1000000.0D);
+    }
+
+    private static String toCsv(final String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String toJson(final String value) {
+        final StringBuilder sb = new StringBuilder("\"");
+        for (int ii = 0; ii < value.length(); ii++) {
+            final char c = value.charAt(ii);
+            if ('"' == c || '\\' == c)
+                sb.append('\\').append(c);
+            else if (' ' > c)
+                sb.append(String.format("\\u%04x", (int) c));
+            else
+                sb.append(c);
+        }
+        return sb.append("\"").toString();
+    }
+
+    /**
+     * A single recorded rule execution.
+     */
+    static final class Record {
+        final String module;
+        final String rule;
+        final String phase;
+        final String outcome;
+        final String resultCache;
+        final int compileHits;
+        final int compileMisses;
+        final long acquireNanos;
+        final long compileNanos;
+        final long evalNanos;
+        final long cpuNanos;
+        final long totalNanos;
+
+        /**
+         * Create a record of an execution.
+         *
+         * @param module the module the rule was executed for.
+         * @param rule the name of the rule.
+         * @param phase {@code execute} or {@code validate}.
+         * @param outcome {@code pass}, {@code fail}, {@code error},
+         * {@code overrun} or {@code skipped}.
+         * @param resultCache {@code hit}, {@code miss}, {@code off}, or
+         * {@code shared} if the result of another module was reused.
+         * @param metrics the script metrics, or {@code null} if no script
+         * was evaluated.
+         * @param totalNanos the total elapsed time of the execution.
+         */
+        Record(final String module, final String rule, final String phase,
+                final String outcome, final String resultCache,
+                final ScriptMetrics metrics, final long totalNanos) {
+            this.module = module;
+            this.rule = rule;
+            this.phase = phase;
+            this.outcome = outcome;
+            this.resultCache = resultCache;
+            this.totalNanos = totalNanos;
+
+            final ScriptMetrics m =
+                    null == metrics ? new ScriptMetrics() : metrics;
+            this.compileHits = m.getCompileHits();
+            this.compileMisses = m.getCompileMisses();
+            this.acquireNanos = m.getAcquireNanos();
+            this.compileNanos = m.getCompileNanos();
+            this.evalNanos = m.getEvalNanos();
+            this.cpuNanos = m.getCpuNanos();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.codehaus.plexus.component.configurator.expression.ExpressionEvaluationException;
+
+/**
+ * State shared between rule executions within the scope of a single Maven
+ * session or project, which may be accessed concurrently during parallel
+ * builds.
+ *
+ * Scopes are weakly keyed by the object which owns them, so that they are
+ * discarded along with that owner.
+ *
+ * @author dth
+ */
+final class RuleScope {
+    /** Scopes, keyed by owner; guarded by {@code SCOPES}. */
+    private static final Map<Object, RuleScope> SCOPES =
+            new WeakHashMap<Object, RuleScope>();
+
+    /** The scope used when no owner is available, such as in unit tests. */
+    private static final RuleScope DETACHED = new RuleScope();
+
+    /** The context map made available to scripts. */
+    private final ConcurrentMap<Object, Object> context =
+            new ConcurrentHashMap<Object, Object>();
+
+    /** State used by the rules themselves, never visible to scripts. */
+    private final ConcurrentMap<String, Object> attributes =
+            new ConcurrentHashMap<String, Object>();
+
+    private RuleScope() {}
+
+    /**
+     * Get the scope for the current Maven session.
+     *
+     * @param helper the helper to look up the session with.
+     * @return the session scope, never {@code null}.
+     */
+    static RuleScope session(final EnforcerRuleHelper helper) {
+        return forOwner(evaluate(helper, "${session}"));
+    }
+
+    /**
+     * Get the scope for the current Maven project.
+     *
+     * @param helper the helper to look up the project with.
+     * @return the project scope, never {@code null}.
+     */
+    static RuleScope project(final EnforcerRuleHelper helper) {
+        return forOwner(evaluate(helper, "${project}"));
+    }
+
+    private static Object evaluate(final EnforcerRuleHelper helper,
+            final String expression) {
+        try {
+            return helper.evaluate(expression);
+        } catch (ExpressionEvaluationException e) {
+            helper.getLog().debug("Cannot evaluate " + expression, e);
+            return null;
+        }
+    }
+
+    private static RuleScope forOwner(final Object owner) {
+        if (null == owner) return DETACHED;
+
+        synchronized (SCOPES) {
+            RuleScope scope = SCOPES.get(owner);
+            if (null == scope) {
+                scope = new RuleScope();
+                SCOPES.put(owner, scope);
+            }
+            return scope;
+        }
+    }
+
+    /**
+     * Get the context map shared by all scripts within this scope.
+     *
+     * @return the shared, thread safe, context map.
+     */
+    ConcurrentMap<Object, Object> getContext() { return context; }
+
+    /**
+     * Get an internal attribute of this scope.
+     *
+     * @param key the attribute key.
+     * @return the attribute value, or {@code null} if not set.
+     */
+    Object getAttribute(final String key) { return attributes.get(key); }
+
+    /**
+     * Set an internal attribute of this scope, unless already set.
+     *
+     * @param key the attribute key.
+     * @param value the value to set if the attribute is not already set.
+     * @return the value of the attribute after this call, which is
+     * {@code value} unless another value was already set.
+     */
+    Object putAttributeIfAbsent(final String key, final Object value) {
+        final Object existing = attributes.putIfAbsent(key, value);
+        return null == existing ? value : existing;
+    }
+}
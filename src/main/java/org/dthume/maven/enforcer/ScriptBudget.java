@@ -0,0 +1,206 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleException;
+
+/**
+ * Wall clock and CPU time limits for script evaluation.
+ *
+ * Budgeted evaluations run on a daemon worker thread, which is monitored by
+ * the calling thread; an evaluation which overruns is interrupted and
+ * abandoned, and an {@link Exceeded} exception thrown to the caller.
+ *
+ * @author dth
+ */
+final class ScriptBudget {
+    /** How often, in milliseconds, the CPU time of a worker is sampled. */
+    static final long CPU_SAMPLE_INTERVAL = 10L;
+
+    private static final ThreadMXBean THREADS =
+            ManagementFactory.getThreadMXBean();
+
+    private static final ExecutorService WORKERS =
+            Executors.newCachedThreadPool(new WorkerFactory());
+
+    private final long timeout;
+    private final long cpuTime;
+
+    /**
+     * Create a budget.
+     *
+     * @param timeout the wall clock limit in milliseconds, or zero or less
+     * for no limit.
+     * @param cpuTime the CPU time limit in milliseconds, or zero or less for
+     * no limit.
+     */
+    ScriptBudget(final long timeout, final long cpuTime) {
+        this.timeout = timeout;
+        this.cpuTime = isCpuTimeAvailable() ? cpuTime : 0L;
+    }
+
+    private static boolean isCpuTimeAvailable() {
+        return THREADS.isThreadCpuTimeSupported()
+                && THREADS.isThreadCpuTimeEnabled();
+    }
+
+    /**
+     * Check whether this budget imposes any limit.
+     *
+     * @return {@code true} if this budget is limited.
+     */
+    boolean isLimited() { return 0L < timeout || 0L < cpuTime; }
+
+    /**
+     * Run a task within this budget, on a worker thread.
+     *
+     * @param task the task to run.
+     * @param metrics the metrics to record CPU time to.
+     * @return the result of the task.
+     * @throws Exceeded if the task overruns this budget.
+     * @throws ExecutionException if the task fails.
+     */
+    <T> T run(final Callable<T> task, final ScriptMetrics metrics)
+            throws Exceeded, ExecutionException {
+        final Worker<T> worker = new Worker<T>(task,
+                Thread.currentThread().getContextClassLoader());
+        final Future<T> future = WORKERS.submit(worker);
+        try {
+            return await(future, worker);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new Exceeded("Interrupted awaiting script evaluation");
+        } finally {
+            metrics.addCpu(worker.getCpuNanos());
+        }
+    }
+
+    private <T> T await(final Future<T> future, final Worker<T> worker)
+            throws Exceeded, ExecutionException, InterruptedException {
+        final long started = System.currentTimeMillis();
+
+        while (true) {
+            final long elapsed = System.currentTimeMillis() - started;
+            if (0L < timeout && elapsed >= timeout)
+                throw overrun(future, "wall clock", timeout);
+
+            if (0L < cpuTime && worker.getCpuNanos() >= cpuTime * 1000000L)
+                throw overrun(future, "CPU time", cpuTime);
+
+            final long wait = 0L < cpuTime
+                    ? (0L < timeout
+                            ? Math.min(CPU_SAMPLE_INTERVAL, timeout - elapsed)
+                            : CPU_SAMPLE_INTERVAL)
+                    : timeout - elapsed;
+
+            try {
+                return future.get(wait, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // Check the budget, then carry on waiting
+            }
+        }
+    }
+
+    private Exceeded overrun(final Future<?> future, final String limit,
+            final long millis) {
+        // Interrupt the worker, but do not wait for it: scripts may not
+        // respond to interruption, in which case the thread is abandoned
+        future.cancel(true);
+        return new Exceeded(String.format(
+                "Script evaluation exceeded its %s budget of %d ms",
+                limit, millis));
+    }
+
+    /**
+     * Thrown when an evaluation overruns its budget.
+     */
+    static final class Exceeded extends EnforcerRuleException {
+        private static final long serialVersionUID = 1L;
+
+        Exceeded(final String message) { super(message); }
+    }
+
+    private static final class Worker<T> implements Callable<T> {
+        private final Callable<T> task;
+        private final ClassLoader loader;
+
+        private volatile Thread thread = null;
+        private volatile long startedCpuNanos = 0L;
+        private volatile long cpuNanos = 0L;
+
+        Worker(final Callable<T> task, final ClassLoader loader) {
+            this.task = task;
+            this.loader = loader;
+        }
+
+        public T call() throws Exception {
+            final Thread current = Thread.currentThread();
+            final ClassLoader previous = current.getContextClassLoader();
+
+            current.setContextClassLoader(loader);
+            startedCpuNanos = cpuTimeOf(current);
+            thread = current;
+            try {
+                return task.call();
+            } finally {
+                thread = null;
+                cpuNanos = cpuTimeOf(current) - startedCpuNanos;
+                current.setContextClassLoader(previous);
+            }
+        }
+
+        /** Get the CPU time used by the task so far, in nanoseconds. */
+        long getCpuNanos() {
+            final Thread t = thread;
+            return null == t
+                    ? cpuNanos : Math.max(0L, cpuTimeOf(t) - startedCpuNanos);
+        }
+
+        private static long cpuTimeOf(final Thread thread) {
+            return isCpuTimeAvailable()
+                    ? Math.max(0L, THREADS.getThreadCpuTime(thread.getId()))
+                    : 0L;
+        }
+    }
+
+    private static final class WorkerFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable,
+                    "script-rule-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
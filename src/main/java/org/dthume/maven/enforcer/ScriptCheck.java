@@ -0,0 +1,84 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import java.io.File;
+
+/**
+ * A single script evaluated as part of a {@link ScriptRuleSet}.
+ *
+ * @author dth
+ */
+public final class ScriptCheck {
+    /** Inline script source. */
+    private String script = null;
+
+    /** The file containing the script to execute. */
+    private File scriptFile = null;
+
+    /** The message to report if this check fails. */
+    private String message = "Script evaluated to false";
+
+    /**
+     * Get the inline script source.
+     *
+     * @return the inline script source, or {@code null}.
+     */
+    public String getScript() { return script; }
+
+    /**
+     * Set the script source to evaluate.
+     *
+     * NOTE: Do not specify both this <i>and</i> {@link #scriptFile}.
+     *
+     * @param script the inline script source to use.
+     */
+    public void setScript(final String script) { this.script = script; }
+
+    /**
+     * Get the file containing the script to evaluate.
+     *
+     * @return the script file, or {@code null}.
+     */
+    public File getScriptFile() { return scriptFile; }
+
+    /**
+     * Set the file containing the script to evaluate.
+     *
+     * NOTE: Do not specify both this <i>and</i> {@link #script}.
+     *
+     * @param file the file containing the script source.
+     */
+    public void setScriptFile(final File file) { this.scriptFile = file; }
+
+    /**
+     * Get the message to report if this check fails.
+     *
+     * @return the failure message.
+     */
+    public String getMessage() { return message; }
+
+    /**
+     * Set the message to report if this check fails.
+     *
+     * @param message the failure message.
+     */
+    public void setMessage(final String message) { this.message = message; }
+}
@@ -0,0 +1,772 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.apache.commons.codec.digest.DigestUtils.md5Hex;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A bounded pool of warm {@link ScriptEngine} instances for a single
+ * scripting language.
+ *
+ * Pools are held in a registry scoped to the Maven session, keyed by
+ * language and class loader, so that the (expensive) discovery of engine
+ * factories and bootstrapping of engines is paid once per build rather than
+ * once per rule execution, while engines, managers and the class loaders they
+ * reference are discarded along with the session, rather than retained for
+ * the life of a long running JVM such as a Maven daemon. Engines
+ * are handed out exclusively via {@link #borrow()}, and must be handed back
+ * via {@link #release(ScriptEngine)}, at which point their engine scope
+ * bindings are reset so that no state leaks between rule executions.
+ *
+ * Each pool also caches the {@link CompiledScript} form of every distinct
+ * script evaluated via {@link #eval}, for engines which are
+ * {@link Compilable}, so that a script is parsed once per build. Compiled
+ * scripts are shared between engines, and so between threads, only where
+ * the engine factory declares its engines {@code MULTITHREADED},
+ * {@code THREAD-ISOLATED} or {@code STATELESS}; for any other engine, each
+ * engine caches the scripts it compiled itself. Either cache holds at most
+ * {@link #MAX_COMPILED} scripts, discarding the least recently used.
+ *
+ * Library pools, obtained via {@link #forLibrary}, hold engines into which
+ * a library script has been loaded, once per engine, so that functions it
+ * defines may be {@link #invoke invoked} repeatedly; their engine scope is
+ * retained, rather than reset, on release. As every distinct library yields
+ * a pool of its own, library pools are evicted from the registry once all
+ * their engines have been released and have expired.
+ *
+ * @author dth
+ */
+final class ScriptEnginePool {
+    /** The default maximum number of idle engines retained per pool. */
+    static final int DEFAULT_MAX_IDLE = 4;
+
+    /** The default time, in milliseconds, to retain an idle engine. */
+    static final long DEFAULT_IDLE_TIMEOUT = 60000L;
+
+    /** The maximum number of compiled scripts retained by each cache. */
+    static final int MAX_COMPILED = 256;
+
+    /** The session scope attribute holding the registry of pools. */
+    private static final String ATTRIBUTE = ScriptEnginePool.class.getName();
+
+    private final String language;
+    private final String library;
+    private final ClassLoader loader;
+    private final ScriptEngineManager manager;
+
+    /** The engines into which the library has been loaded. */
+    private final Map<ScriptEngine, Boolean> loaded =
+            Collections.synchronizedMap(
+                    new WeakHashMap<ScriptEngine, Boolean>());
+
+    /** Idle engines, most recently released first; guarded by {@code this}. */
+    private final LinkedList<IdleEngine> idle = new LinkedList<IdleEngine>();
+
+    /**
+     * Compiled scripts shared by all engines, for thread safe engines only;
+     * keyed by language, encoding and content hash.
+     */
+    private final Map<String, CompiledScript> compiled = newCompiledCache();
+
+    /**
+     * Compiled scripts private to each engine, for engines which are not
+     * thread safe; guarded by itself.
+     */
+    private final Map<ScriptEngine, Map<String, CompiledScript>> ownCompiled =
+            new IdentityHashMap<ScriptEngine, Map<String, CompiledScript>>();
+
+    /**
+     * Engines abandoned while possibly still in use, whose compiled scripts
+     * must no longer be retained; guarded by {@link #ownCompiled}.
+     */
+    private final Map<ScriptEngine, Boolean> abandoned =
+            new WeakHashMap<ScriptEngine, Boolean>();
+
+    private final AtomicLong compileHits = new AtomicLong();
+    private final AtomicLong compileMisses = new AtomicLong();
+
+    /** The factory for this pool's language, resolved on first use. */
+    private volatile ScriptEngineFactory factory = null;
+
+    private volatile int maxIdle = DEFAULT_MAX_IDLE;
+    private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    /** Whether any rule has set the limits; guarded by {@code this}. */
+    private boolean configured = false;
+
+    /** The number of engines borrowed and not yet released. */
+    private int borrowed = 0;
+
+    private ScriptEnginePool(final String language, final String library,
+            final ClassLoader loader, final ScriptEngineManager manager) {
+        this.language = language;
+        this.library = library;
+        this.loader = loader;
+        this.manager = manager;
+    }
+
+    /**
+     * Get the pool for a language within the current Maven session, using
+     * the current thread's context class loader to discover engines.
+     *
+     * @param helper the helper to look up the session with.
+     * @param language the scripting language.
+     * @return the pool for {@code language}, never {@code null}.
+     */
+    static ScriptEnginePool forLanguage(final EnforcerRuleHelper helper,
+            final String language) {
+        return Registry.forSession(helper).get(language, null);
+    }
+
+    /**
+     * Get the pool of engines into which a library script is loaded, within
+     * the current Maven session.
+     *
+     * @param helper the helper to look up the session with.
+     * @param language the scripting language.
+     * @param library the library script source.
+     * @return the pool for {@code library}, never {@code null}.
+     */
+    static ScriptEnginePool forLibrary(final EnforcerRuleHelper helper,
+            final String language, final String library) {
+        return Registry.forSession(helper).get(language, library);
+    }
+
+    /**
+     * Set the limits of this pool. As a pool is shared by every rule using
+     * its language within the session, the first limits set replace the
+     * defaults, and later ones may only widen them, so that the limits do
+     * not depend on which rule happened to execute last.
+     *
+     * @param maxIdle the maximum number of idle engines to retain.
+     * @param idleTimeout the time, in milliseconds, after which an idle
+     * engine is discarded, or a negative value to retain idle engines
+     * indefinitely.
+     */
+    synchronized void configure(final int maxIdle, final long idleTimeout) {
+        if (!configured) {
+            configured = true;
+            this.maxIdle = Math.max(0, maxIdle);
+            this.idleTimeout = idleTimeout;
+        } else {
+            this.maxIdle = Math.max(this.maxIdle, maxIdle);
+            this.idleTimeout = 0 > this.idleTimeout || 0 > idleTimeout
+                    ? -1L : Math.max(this.idleTimeout, idleTimeout);
+        }
+    }
+
+    /**
+     * Get the language served by this pool.
+     *
+     * @return the scripting language.
+     */
+    String getLanguage() { return language; }
+
+    /**
+     * Get the names of all languages for which engines can be created with
+     * this pool's class loader.
+     *
+     * @return the available language names, sorted.
+     */
+    List<String> getAvailableLanguages() {
+        final Set<String> names = new TreeSet<String>();
+        names.add(JavaPredicateEngine.LANGUAGE);
+        synchronized (manager) {
+            for (final ScriptEngineFactory f : manager.getEngineFactories())
+                names.addAll(f.getNames());
+        }
+        return new ArrayList<String>(names);
+    }
+
+    /**
+     * Borrow an engine from the pool, creating one if none are idle.
+     *
+     * @return an engine for the exclusive use of the caller, or {@code null}
+     * if no engine is available for this pool's language.
+     */
+    ScriptEngine borrow() {
+        synchronized (this) {
+            evictExpired(System.currentTimeMillis());
+            borrowed++;
+            if (!idle.isEmpty())
+                return idle.removeFirst().engine;
+        }
+
+        final ScriptEngine engine = createEngine();
+        if (null == engine) {
+            synchronized (this) { borrowed--; }
+        }
+        return engine;
+    }
+
+    /**
+     * Return a previously borrowed engine to the pool.
+     *
+     * @param engine the engine to return, may be {@code null}.
+     */
+    void release(final ScriptEngine engine) {
+        if (null == engine) return;
+
+        if (null == library) reset(engine);
+
+        final long now = System.currentTimeMillis();
+        synchronized (this) {
+            borrowed = Math.max(0, borrowed - 1);
+            evictExpired(now);
+            if (idle.size() < maxIdle)
+                idle.addFirst(new IdleEngine(engine, now));
+            else
+                discard(engine);
+        }
+    }
+
+    /**
+     * Give up a borrowed engine which may still be in use, as by a script
+     * abandoned on overrunning its budget. The engine is never reused, and
+     * no longer counts as borrowed.
+     *
+     * @param engine the engine to give up, may be {@code null}.
+     */
+    void abandon(final ScriptEngine engine) {
+        if (null == engine) return;
+
+        synchronized (ownCompiled) {
+            abandoned.put(engine, Boolean.TRUE);
+        }
+        synchronized (this) {
+            borrowed = Math.max(0, borrowed - 1);
+            discard(engine);
+        }
+    }
+
+    /**
+     * Take over an engine created, and scripts compiled with it, outside the
+     * pool by a {@link ScriptWarmup}, so that it is the next engine borrowed.
+     * Engines created with another class loader or factory are refused, as
+     * are all engines offered to library pools.
+     *
+     * @param engine the engine to adopt.
+     * @param loader the class loader the engine was discovered with.
+     * @param scripts the scripts compiled with the engine.
+     * @return {@code true} if the engine was adopted.
+     */
+    boolean adopt(final ScriptEngine engine, final ClassLoader loader,
+            final List<ScriptWarmup.Precompiled> scripts) {
+        if (null != library || this.loader != loader) return false;
+
+        final ScriptEngineFactory f = getFactory();
+        if (null == f || f.getClass() != engine.getFactory().getClass())
+            return false;
+
+        final Map<String, CompiledScript> cache = compiledFor(engine);
+        for (final ScriptWarmup.Precompiled script : scripts) {
+            final String key = toCompiledKey(script.source, script.encoding);
+            synchronized (cache) {
+                if (!cache.containsKey(key)) cache.put(key, script.script);
+            }
+        }
+
+        synchronized (this) {
+            if (idle.size() >= maxIdle) {
+                discard(engine);
+                return false;
+            }
+            idle.addFirst(new IdleEngine(engine, System.currentTimeMillis()));
+            return true;
+        }
+    }
+
+    /**
+     * Evaluate a script with an engine borrowed from this pool, compiling it
+     * at most once if the engine supports compilation.
+     *
+     * @param engine an engine borrowed from this pool.
+     * @param source the script source.
+     * @param encoding the encoding the source was read with, or {@code null}
+     * for inline scripts.
+     * @param context the context to evaluate the script in.
+     * @param log the log to report cache statistics to.
+     * @param metrics the metrics to record compilation and evaluation
+     * times to.
+     * @return the result of the evaluation.
+     * @throws ScriptException if compilation or evaluation fails.
+     */
+    Object eval(final ScriptEngine engine,
+            final String source,
+            final String encoding,
+            final ScriptContext context,
+            final Log log,
+            final ScriptMetrics metrics) throws ScriptException {
+        if (!(engine instanceof Compilable)) {
+            log.debug("Engine does not support compilation");
+            final long started = System.nanoTime();
+            try {
+                return engine.eval(source, context);
+            } finally {
+                metrics.addEval(System.nanoTime() - started);
+            }
+        }
+
+        final Map<String, CompiledScript> scripts = compiledFor(engine);
+        final String key = toCompiledKey(source, encoding);
+        CompiledScript script = scripts.get(key);
+        if (null == script) {
+            compileMisses.incrementAndGet();
+            final long started = System.nanoTime();
+            final Object name = context.getAttribute(ScriptEngine.FILENAME);
+            script = compile(engine, scripts, key, source,
+                    null == name ? null : name.toString());
+            metrics.addCompile(System.nanoTime() - started);
+        } else {
+            compileHits.incrementAndGet();
+            metrics.addCompileHit();
+        }
+
+        if (log.isDebugEnabled())
+            log.debug(String.format(
+                    "Compiled script cache for %s: %d hits, %d misses",
+                    language, compileHits.get(), compileMisses.get()));
+
+        final long started = System.nanoTime();
+        try {
+            return script.eval(context);
+        } finally {
+            metrics.addEval(System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Invoke a function defined by this pool's library, loading the library
+     * into the engine first if it has not already been loaded.
+     *
+     * The attributes of the engine scope of {@code context} are visible to
+     * the library, as global scope attributes of the engine's own context,
+     * for the duration of the call only.
+     *
+     * @param engine an engine borrowed from this pool.
+     * @param function the name of the function to invoke.
+     * @param args the arguments to pass to the function.
+     * @param context the context providing bindings and writers.
+     * @param metrics the metrics to record loading and invocation times to.
+     * @return the result of the function.
+     * @throws ScriptException if loading or invocation fails, or if the
+     * engine does not support invocation.
+     */
+    Object invoke(final ScriptEngine engine,
+            final String function,
+            final Object[] args,
+            final ScriptContext context,
+            final ScriptMetrics metrics) throws ScriptException {
+        if (!(engine instanceof Invocable))
+            throw new ScriptException("Engine for " + language
+                    + " does not support invoking functions");
+
+        final ScriptContext own = engine.getContext();
+        final Bindings globals = own.getBindings(ScriptContext.GLOBAL_SCOPE);
+        final Writer writer = own.getWriter();
+        final Writer errorWriter = own.getErrorWriter();
+
+        own.setBindings(context.getBindings(ScriptContext.ENGINE_SCOPE),
+                ScriptContext.GLOBAL_SCOPE);
+        own.setWriter(context.getWriter());
+        own.setErrorWriter(context.getErrorWriter());
+        try {
+            if (!loaded.containsKey(engine)) {
+                final long started = System.nanoTime();
+                engine.eval(library);
+                metrics.addCompile(System.nanoTime() - started);
+                loaded.put(engine, Boolean.TRUE);
+            }
+
+            final long started = System.nanoTime();
+            try {
+                return ((Invocable) engine).invokeFunction(function, args);
+            } catch (NoSuchMethodException e) {
+                throw new ScriptException("No such function: " + function);
+            } finally {
+                metrics.addEval(System.nanoTime() - started);
+            }
+        } finally {
+            own.setBindings(globals, ScriptContext.GLOBAL_SCOPE);
+            own.setWriter(writer);
+            own.setErrorWriter(errorWriter);
+        }
+    }
+
+    /**
+     * Compile a script ahead of its first evaluation, if the engine supports
+     * compilation and the script has not already been compiled.
+     *
+     * @param engine an engine borrowed from this pool.
+     * @param source the script source.
+     * @param encoding the encoding the source was read with, or {@code null}
+     * for inline scripts.
+     * @param name the file name to compile the script as, or {@code null}
+     * for inline scripts.
+     * @throws ScriptException if compilation fails.
+     */
+    void precompile(final ScriptEngine engine, final String source,
+            final String encoding, final String name) throws ScriptException {
+        if (!(engine instanceof Compilable)) return;
+
+        final Map<String, CompiledScript> scripts = compiledFor(engine);
+        final String key = toCompiledKey(source, encoding);
+        if (!scripts.containsKey(key))
+            compile(engine, scripts, key, source, name);
+    }
+
+    private String toCompiledKey(final String source, final String encoding) {
+        return language + ":" + encoding + ":" + md5Hex(source);
+    }
+
+    private CompiledScript compile(final ScriptEngine engine,
+            final Map<String, CompiledScript> scripts, final String key,
+            final String source, final String name) throws ScriptException {
+        final CompiledScript script = compile(engine, source, name);
+        synchronized (scripts) {
+            final CompiledScript existing = scripts.get(key);
+            if (null != existing) return existing;
+            scripts.put(key, script);
+            return script;
+        }
+    }
+
+    /**
+     * Compile a script as if read from a file, so that engines such as
+     * Nashorn name the frames of the compiled script after it; they take
+     * the name from the engine's own context, not that of the evaluation.
+     *
+     * @param engine the engine, which must be {@link Compilable}.
+     * @param source the script source.
+     * @param name the file name, or {@code null} for inline scripts.
+     * @return the compiled script.
+     * @throws ScriptException if compilation fails.
+     */
+    static CompiledScript compile(final ScriptEngine engine,
+            final String source, final String name) throws ScriptException {
+        if (null == name) return ((Compilable) engine).compile(source);
+
+        engine.put(ScriptEngine.FILENAME, name);
+        try {
+            return ((Compilable) engine).compile(source);
+        } finally {
+            engine.getBindings(ScriptContext.ENGINE_SCOPE)
+                .remove(ScriptEngine.FILENAME);
+        }
+    }
+
+    /**
+     * Get the cache of compiled scripts to use with an engine: the shared
+     * cache if the engine's factory declares it thread safe, otherwise a
+     * cache of the engine's own.
+     */
+    private Map<String, CompiledScript> compiledFor(
+            final ScriptEngine engine) {
+        if (isThreadSafe(engine)) return compiled;
+
+        synchronized (ownCompiled) {
+            Map<String, CompiledScript> scripts = ownCompiled.get(engine);
+            if (null == scripts) {
+                scripts = newCompiledCache();
+                // Scripts an abandoned engine still compiles are not kept
+                if (!abandoned.containsKey(engine))
+                    ownCompiled.put(engine, scripts);
+            }
+            return scripts;
+        }
+    }
+
+    /**
+     * Determine whether scripts compiled with an engine are shared with the
+     * other engines of this pool, as its factory declares it thread safe.
+     *
+     * @param engine an engine borrowed from this pool.
+     * @return {@code true} if compiled scripts are shared.
+     */
+    boolean sharesCompiledScripts(final ScriptEngine engine) {
+        return isThreadSafe(engine);
+    }
+
+    private static boolean isThreadSafe(final ScriptEngine engine) {
+        final Object threading =
+                engine.getFactory().getParameter("THREADING");
+        return "MULTITHREADED".equals(threading)
+                || "THREAD-ISOLATED".equals(threading)
+                || "STATELESS".equals(threading);
+    }
+
+    private static Map<String, CompiledScript> newCompiledCache() {
+        return Collections.synchronizedMap(new CompiledCache());
+    }
+
+    /** Drop the compiled scripts private to an engine leaving the pool. */
+    private void discard(final ScriptEngine engine) {
+        synchronized (ownCompiled) {
+            ownCompiled.remove(engine);
+        }
+    }
+
+    /**
+     * Discard all idle engines and compiled scripts.
+     */
+    synchronized void clear() {
+        idle.clear();
+        compiled.clear();
+        synchronized (ownCompiled) {
+            ownCompiled.clear();
+        }
+    }
+
+    /**
+     * Get the number of distinct scripts compiled by this pool, counting
+     * those compiled by each engine which does not share its scripts.
+     *
+     * @return the number of cached compiled scripts.
+     */
+    int compiledCount() {
+        int count = compiled.size();
+        synchronized (ownCompiled) {
+            for (final Map<String, CompiledScript> scripts
+                    : ownCompiled.values())
+                count += scripts.size();
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of engines currently idle in this pool.
+     *
+     * @return the number of idle engines.
+     */
+    synchronized int idleCount() { return idle.size(); }
+
+    /**
+     * Determine whether this pool may be discarded, as no engine is borrowed
+     * from it and all those released to it have expired.
+     */
+    private synchronized boolean isUnused(final long now) {
+        evictExpired(now);
+        return 0 == borrowed && idle.isEmpty();
+    }
+
+    private void evictExpired(final long now) {
+        final long timeout = idleTimeout;
+        if (0 > timeout) return;
+
+        while (!idle.isEmpty() && now - idle.getLast().released >= timeout)
+            discard(idle.removeLast().engine);
+    }
+
+    private ScriptEngine createEngine() {
+        if (JavaPredicateEngine.LANGUAGE.equals(language))
+            return new JavaPredicateEngine();
+
+        final ScriptEngineFactory f = getFactory();
+        return null == f ? null : f.getScriptEngine();
+    }
+
+    /**
+     * Resolve the factory for this pool's language, as the manager would
+     * for {@link ScriptEngineManager#getEngineByName}. Every engine is then
+     * created by the factory itself, rather than the first by the manager,
+     * so that none shares the manager's global scope bindings with rules
+     * outside this pool.
+     */
+    private ScriptEngineFactory getFactory() {
+        ScriptEngineFactory f = factory;
+        if (null == f) {
+            synchronized (manager) {
+                f = findFactory(manager, language);
+            }
+            factory = f;
+        }
+        return f;
+    }
+
+    /**
+     * Find the factory a manager would use to create engines for a language.
+     *
+     * @param manager the manager to search.
+     * @param language the scripting language.
+     * @return the factory for {@code language}, or {@code null} if none.
+     */
+    static ScriptEngineFactory findFactory(final ScriptEngineManager manager,
+            final String language) {
+        for (final ScriptEngineFactory f : manager.getEngineFactories())
+            if (f.getNames().contains(language)) return f;
+        return null;
+    }
+
+    private void reset(final ScriptEngine engine) {
+        engine.setBindings(engine.createBindings(),
+                ScriptContext.ENGINE_SCOPE);
+    }
+
+    /**
+     * The pools of a single Maven session.
+     */
+    private static final class Registry {
+        /** All pools, keyed by language, library and class loader. */
+        private final ConcurrentMap<PoolKey, ScriptEnginePool> pools =
+                new ConcurrentHashMap<PoolKey, ScriptEnginePool>();
+
+        /** Engine managers, one per class loader. */
+        private final ConcurrentMap<ClassLoader, ScriptEngineManager>
+                managers =
+                    new ConcurrentHashMap<ClassLoader, ScriptEngineManager>();
+
+        static Registry forSession(final EnforcerRuleHelper helper) {
+            final RuleScope scope = RuleScope.session(helper);
+            final Object registry = scope.getAttribute(ATTRIBUTE);
+            return null != registry ? (Registry) registry
+                    : (Registry) scope.putAttributeIfAbsent(ATTRIBUTE,
+                            new Registry());
+        }
+
+        ScriptEnginePool get(final String language, final String library) {
+            final ClassLoader loader = contextClassLoader();
+            final PoolKey key = new PoolKey(language,
+                    null == library ? null : md5Hex(library), loader);
+            evictUnusedLibraries(key);
+
+            ScriptEnginePool pool = pools.get(key);
+            if (null == pool) {
+                pool = new ScriptEnginePool(language, library, loader,
+                        managerFor(loader));
+                final ScriptEnginePool existing =
+                        pools.putIfAbsent(key, pool);
+                if (null != existing) pool = existing;
+            }
+            return pool;
+        }
+
+        private void evictUnusedLibraries(final PoolKey requested) {
+            final long now = System.currentTimeMillis();
+            for (final Map.Entry<PoolKey, ScriptEnginePool> entry
+                    : pools.entrySet()) {
+                final ScriptEnginePool pool = entry.getValue();
+                if (null != pool.library && !requested.equals(entry.getKey())
+                        && pool.isUnused(now))
+                    pools.remove(entry.getKey(), pool);
+            }
+        }
+
+        private ScriptEngineManager managerFor(final ClassLoader loader) {
+            ScriptEngineManager manager = managers.get(loader);
+            if (null == manager) {
+                manager = new ScriptEngineManager(loader);
+                final ScriptEngineManager existing =
+                        managers.putIfAbsent(loader, manager);
+                if (null != existing) manager = existing;
+            }
+            return manager;
+        }
+
+        private static ClassLoader contextClassLoader() {
+            final ClassLoader loader =
+                    Thread.currentThread().getContextClassLoader();
+            return null == loader
+                    ? ScriptEnginePool.class.getClassLoader() : loader;
+        }
+    }
+
+    /**
+     * A least recently used cache of compiled scripts.
+     */
+    private static final class CompiledCache
+            extends LinkedHashMap<String, CompiledScript> {
+        private static final long serialVersionUID = 1L;
+
+        CompiledCache() {
+            super(16, 0.75f, true);
+        }
+
+        protected boolean removeEldestEntry(
+                final Map.Entry<String, CompiledScript> eldest) {
+            return size() > MAX_COMPILED;
+        }
+    }
+
+    private static final class IdleEngine {
+        final ScriptEngine engine;
+        final long released;
+
+        IdleEngine(final ScriptEngine engine, final long released) {
+            this.engine = engine;
+            this.released = released;
+        }
+    }
+
+    private static final class PoolKey {
+        private final String language;
+        private final String library;
+        private final ClassLoader loader;
+
+        PoolKey(final String language, final String library,
+                final ClassLoader loader) {
+            this.language = language;
+            this.library = library;
+            this.loader = loader;
+        }
+
+        public boolean equals(final Object o) {
+            if (!(o instanceof PoolKey)) return false;
+            final PoolKey other = (PoolKey) o;
+            return loader == other.loader && language.equals(other.language)
+                    && (null == library
+                            ? null == other.library
+                            : library.equals(other.library));
+        }
+
+        public int hashCode() {
+            return 31 * (31 * language.hashCode()
+                    + (null == library ? 0 : library.hashCode()))
+                    + System.identityHashCode(loader);
+        }
+    }
+}
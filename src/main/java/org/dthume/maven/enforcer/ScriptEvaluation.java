@@ -0,0 +1,481 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.dthume.maven.util.LogWriter.LogLevel.ERROR;
+import static org.dthume.maven.util.LogWriter.LogLevel.INFO;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleException;
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.component.configurator.expression.ExpressionEvaluationException;
+import org.dthume.maven.util.LogWriter;
+
+/**
+ * A prepared environment in which one or more scripts are evaluated: a
+ * pooled engine together with a single script context, wired to the Maven
+ * log, into which bindings are placed.
+ *
+ * Instances are not thread safe, and must be {@link #release() released}
+ * once all scripts have been evaluated.
+ *
+ * @author dth
+ */
+final class ScriptEvaluation {
+    /** The expression to get the user specified source file encoding. */
+    private static final String SOURCE_ENCODING =
+            "${project.build.sourceEncoding}";
+
+    /** Script output is written to the log as it is written. */
+    static final String OUTPUT_DIRECT = "direct";
+
+    /** Script output is buffered, and written to the log line by line. */
+    static final String OUTPUT_LINE = "line";
+
+    /** Script output is buffered, and written once evaluation completes. */
+    static final String OUTPUT_EVALUATION = "evaluation";
+
+    /** The default maximum number of characters of output to buffer. */
+    static final int DEFAULT_OUTPUT_BUFFER = 64 * 1024;
+
+    /** The project scope attribute caching the resolved source encoding. */
+    private static final String ENCODING_ATTRIBUTE =
+            ScriptEvaluation.class.getName() + ".encoding";
+
+    private final EnforcerRuleHelper helper;
+    private final Log log;
+    private final ScriptEnginePool pool;
+    private final ScriptEngine engine;
+    private final ScriptContext context;
+    private final ScriptMetrics metrics = new ScriptMetrics();
+
+    /** The source encoding, looked up on first use. */
+    private String encoding = null;
+
+    /** The limits evaluations must complete within. */
+    private ScriptBudget budget = new ScriptBudget(0L, 0L);
+
+    /** Whether an overrunning evaluation has been abandoned. */
+    private boolean abandoned = false;
+
+    /** The profiler to sample evaluations with, if any. */
+    private ScriptProfiler profiler = null;
+
+    /** The name to root profiled stacks at. */
+    private String profileName = null;
+
+    /**
+     * Borrow an engine and prepare a context for evaluating scripts.
+     *
+     * @param helper the rule helper.
+     * @param pool the pool to borrow an engine from.
+     * @throws EnforcerRuleException if no engine is available.
+     */
+    ScriptEvaluation(final EnforcerRuleHelper helper,
+            final ScriptEnginePool pool) throws EnforcerRuleException {
+        this.helper = helper;
+        this.log = helper.getLog();
+        this.pool = pool;
+
+        final long started = System.nanoTime();
+        this.engine = pool.borrow();
+        metrics.addAcquire(System.nanoTime() - started);
+
+        if (null == engine)
+            throw new EnforcerRuleException(
+                    "No script engine available for language: "
+                    + pool.getLanguage());
+
+        this.context = new SimpleScriptContext();
+        configureIO();
+    }
+
+    /**
+     * Check whether a script output mode is supported.
+     *
+     * @param mode the output mode.
+     * @return {@code true} if {@code mode} is supported.
+     */
+    static boolean isOutputMode(final String mode) {
+        return OUTPUT_DIRECT.equals(mode) || OUTPUT_LINE.equals(mode)
+                || OUTPUT_EVALUATION.equals(mode);
+    }
+
+    /**
+     * Find a binding which exposes the project, the session or the rule
+     * helper, as values such as {@code ${project}} and {@code ${session}}
+     * do once evaluated by Maven.
+     *
+     * @param bindings the bindings to check, may be {@code null}.
+     * @return the key of the first such binding, or {@code null} if none.
+     */
+    static String findUnrestrictedBinding(final Map<String, ?> bindings) {
+        if (null == bindings) return null;
+
+        for (final Map.Entry<String, ?> entry : bindings.entrySet()) {
+            final Object value = entry.getValue();
+            if (value instanceof MavenProject || value instanceof MavenSession
+                    || value instanceof EnforcerRuleHelper)
+                return entry.getKey();
+        }
+        return null;
+    }
+
+    /**
+     * Check the result of a script.
+     *
+     * @param evaluator the evaluator to check the result with.
+     * @param result the script result.
+     * @return {@code null} if the result is valid, otherwise the violations
+     * it describes, which are empty unless {@code evaluator} is a
+     * {@link StructuredResultEvaluator}.
+     */
+    static List<Violation> check(final ScriptResultEvaluator evaluator,
+            final Object result) {
+        if (evaluator instanceof StructuredResultEvaluator) {
+            final List<Violation> violations =
+                ((StructuredResultEvaluator) evaluator).getViolations(result);
+            if (null != violations)
+                return violations.isEmpty() ? null : violations;
+        }
+
+        return evaluator.isValidResult(result)
+                ? null : Collections.<Violation>emptyList();
+    }
+
+    /**
+     * Configure how script output is written to the log.
+     *
+     * @param mode one of {@link #OUTPUT_DIRECT}, {@link #OUTPUT_LINE} or
+     * {@link #OUTPUT_EVALUATION}.
+     * @param async {@code true} to hand buffered output to a background
+     * logging thread; ignored for direct output.
+     * @param maxBuffer the maximum number of characters to buffer.
+     */
+    void configureOutput(final String mode, final boolean async,
+            final int maxBuffer) {
+        if (OUTPUT_DIRECT.equals(mode)) return;
+
+        final boolean perLine = OUTPUT_LINE.equals(mode);
+        final BufferedLogWriter.Dispatcher dispatcher = async
+                ? BufferedLogWriter.Dispatcher.forSession(helper) : null;
+        context.setWriter(new BufferedLogWriter(log, INFO,
+                perLine, maxBuffer, dispatcher));
+        context.setErrorWriter(new BufferedLogWriter(log, ERROR,
+                perLine, maxBuffer, dispatcher));
+    }
+
+    /**
+     * Set the limits evaluations must complete within.
+     *
+     * @param budget the evaluation budget.
+     */
+    void setBudget(final ScriptBudget budget) { this.budget = budget; }
+
+    /**
+     * Set the profiler to sample evaluations with.
+     *
+     * @param profiler the profiler, or {@code null} to not profile.
+     * @param name the name of the script, at which sampled stacks are
+     * rooted.
+     */
+    void setProfiler(final ScriptProfiler profiler, final String name) {
+        this.profiler = profiler;
+        this.profileName = name;
+    }
+
+    /**
+     * Bind a value into the engine scope of the evaluation context.
+     *
+     * @param key the name to bind {@code value} to.
+     * @param value the value to bind.
+     */
+    void bind(final String key, final Object value) {
+        if (log.isDebugEnabled())
+            log.debug(String.format("Binding %s=%s", key, value));
+
+        context.getBindings(ScriptContext.ENGINE_SCOPE).put(key, value);
+    }
+
+    /**
+     * Evaluate a script, given either inline or as a file.
+     *
+     * @param script the inline script source, or blank to use
+     * {@code scriptFile}.
+     * @param scriptFile the file containing the script source.
+     * @return the result of the evaluation.
+     * @throws EnforcerRuleException if the script cannot be read or fails to
+     * evaluate.
+     */
+    Object eval(final String script, final File scriptFile)
+            throws EnforcerRuleException {
+        if (abandoned)
+            throw new EnforcerRuleException(
+                    "Cannot evaluate after exceeding the evaluation budget");
+
+        try {
+            if (isBlank(script)) {
+                if (log.isDebugEnabled())
+                    log.debug("Using script file: " + scriptFile);
+
+                // Names the frames of the script in stack traces
+                context.setAttribute(ScriptEngine.FILENAME,
+                        scriptFile.getPath(), ScriptContext.ENGINE_SCOPE);
+                final String encoding = getSourceEncoding();
+                return evaluate(readScriptFile(scriptFile, encoding),
+                        encoding);
+            } else {
+                log.debug("Using inline script");
+                return evaluate(script, null);
+            }
+        } catch (ScriptException e) {
+            throw new EnforcerRuleException("Script Exception", e);
+        }
+    }
+
+    /**
+     * Invoke a function defined by the library of this evaluation's pool,
+     * which must have been obtained via {@link ScriptEnginePool#forLibrary}.
+     *
+     * @param function the name of the function to invoke.
+     * @param args the arguments to pass to the function.
+     * @return the result of the function.
+     * @throws EnforcerRuleException if the library fails to load, or the
+     * function cannot be invoked.
+     */
+    Object invoke(final String function, final Object[] args)
+            throws EnforcerRuleException {
+        if (abandoned)
+            throw new EnforcerRuleException(
+                    "Cannot evaluate after exceeding the evaluation budget");
+
+        if (log.isDebugEnabled())
+            log.debug("Invoking library function: " + function);
+
+        try {
+            return run(new Task() {
+                public Object run(final ScriptMetrics metrics)
+                        throws ScriptException {
+                    return pool.invoke(engine, function, args, context,
+                            metrics);
+                }
+            });
+        } catch (ScriptException e) {
+            throw new EnforcerRuleException("Script Exception", e);
+        }
+    }
+
+    private Object evaluate(final String source, final String encoding)
+            throws EnforcerRuleException, ScriptException {
+        return run(new Task() {
+            public Object run(final ScriptMetrics metrics)
+                    throws ScriptException {
+                return pool.eval(engine, source, encoding, context, log,
+                        metrics);
+            }
+        });
+    }
+
+    private Object run(final Task unprofiled)
+            throws EnforcerRuleException, ScriptException {
+        final Task evaluation =
+                null == profiler ? unprofiled : profiled(unprofiled);
+        if (!budget.isLimited()) return evaluation.run(metrics);
+
+        // The worker records to its own metrics, as it may be abandoned
+        final ScriptMetrics workerMetrics = new ScriptMetrics();
+        final Callable<Object> task = new Callable<Object>() {
+            public Object call() throws ScriptException {
+                return evaluation.run(workerMetrics);
+            }
+        };
+
+        try {
+            final Object result = budget.run(task, metrics);
+            metrics.add(workerMetrics);
+            return result;
+        } catch (ScriptBudget.Exceeded e) {
+            abandoned = true;
+            throw e;
+        } catch (ExecutionException e) {
+            metrics.add(workerMetrics);
+            final Throwable cause = e.getCause();
+            if (cause instanceof ScriptException)
+                throw (ScriptException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new EnforcerRuleException("Script Exception", e);
+        }
+    }
+
+    /**
+     * Sample whichever thread runs the task, which is a worker thread when
+     * the evaluation budget is limited.
+     */
+    private Task profiled(final Task task) {
+        return new Task() {
+            public Object run(final ScriptMetrics metrics)
+                    throws ScriptException {
+                final ScriptProfiler.Sampler sampler =
+                        profiler.start(profileName);
+                try {
+                    return task.run(metrics);
+                } finally {
+                    sampler.finish();
+                }
+            }
+        };
+    }
+
+    /**
+     * Return the engine to the pool. This evaluation may not be used again.
+     */
+    void release() {
+        try {
+            closeQuietly(context.getWriter());
+            closeQuietly(context.getErrorWriter());
+        } finally {
+            // An abandoned engine may still be in use by its worker
+            if (abandoned)
+                pool.abandon(engine);
+            else
+                pool.release(engine);
+        }
+    }
+
+    private void closeQuietly(final Writer writer) {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.debug("Caught exception closing script output", e);
+        }
+    }
+
+    /**
+     * Get the timings gathered by this evaluation so far.
+     *
+     * @return the metrics of this evaluation.
+     */
+    ScriptMetrics getMetrics() { return metrics; }
+
+    /**
+     * Get the source of a script, given either inline or as a file.
+     *
+     * @param helper the rule helper.
+     * @param script the inline script source, or blank to use
+     * {@code scriptFile}.
+     * @param scriptFile the file containing the script source.
+     * @return the script source.
+     * @throws EnforcerRuleException if the script file cannot be read.
+     */
+    static String readSource(final EnforcerRuleHelper helper,
+            final String script, final File scriptFile)
+            throws EnforcerRuleException {
+        return isBlank(script)
+                ? readScriptFile(scriptFile, getSourceEncoding(helper))
+                : script;
+    }
+
+    private static String readScriptFile(final File scriptFile,
+            final String encoding) throws EnforcerRuleException {
+        try {
+            return ScriptSources.read(scriptFile, encoding);
+        } catch (FileNotFoundException e) {
+            throw new EnforcerRuleException("Script file not found", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new EnforcerRuleException("Unsupported encoding", e);
+        } catch (IOException e) {
+            throw new EnforcerRuleException("Cannot read script file", e);
+        }
+    }
+
+    private String getSourceEncoding() {
+        if (null == encoding) encoding = getSourceEncoding(helper);
+        return encoding;
+    }
+
+    /**
+     * Get the encoding to read script files of the current project with,
+     * resolving it once per project.
+     *
+     * @param helper the rule helper.
+     * @return the source encoding, never {@code null}.
+     */
+    static String getSourceEncoding(final EnforcerRuleHelper helper) {
+        final RuleScope project = RuleScope.project(helper);
+        final String encoding =
+                (String) project.getAttribute(ENCODING_ATTRIBUTE);
+        return null != encoding ? encoding
+                : (String) project.putAttributeIfAbsent(ENCODING_ATTRIBUTE,
+                        resolveSourceEncoding(helper));
+    }
+
+    private static String resolveSourceEncoding(
+            final EnforcerRuleHelper helper) {
+        final Log log = helper.getLog();
+        String encoding = null;
+        try {
+            encoding = (String)helper.evaluate(SOURCE_ENCODING);
+        } catch (ExpressionEvaluationException e) {
+            log.debug("Caught exception looking up source encoding", e);
+        }
+
+        if (isBlank(encoding)) {
+            log.debug("Using platform encoding");
+            encoding = java.nio.charset.Charset.defaultCharset().name();
+        }
+
+        if (log.isDebugEnabled())
+            log.debug("Encoding to use for source files: " + encoding);
+
+        return encoding;
+    }
+
+    private void configureIO() {
+        context.setWriter(new LogWriter(log));
+        context.setErrorWriter(new LogWriter(log, ERROR));
+    }
+
+    /** A script evaluation, recording to the given metrics. */
+    private interface Task {
+        Object run(ScriptMetrics metrics) throws ScriptException;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+/**
+ * Timings gathered during a single {@link ScriptEvaluation}. Instances are
+ * not thread safe.
+ *
+ * @author dth
+ */
+final class ScriptMetrics {
+    private long acquireNanos = 0L;
+    private long compileNanos = 0L;
+    private long evalNanos = 0L;
+    private long cpuNanos = 0L;
+    private int compileHits = 0;
+    private int compileMisses = 0;
+
+    /**
+     * Record the time taken to acquire an engine.
+     *
+     * @param nanos the elapsed time in nanoseconds.
+     */
+    void addAcquire(final long nanos) { acquireNanos += nanos; }
+
+    /**
+     * Record a compiled script cache miss, and the time taken to compile.
+     *
+     * @param nanos the elapsed time in nanoseconds.
+     */
+    void addCompile(final long nanos) {
+        compileNanos += nanos;
+        compileMisses++;
+    }
+
+    /** Record a compiled script cache hit. */
+    void addCompileHit() { compileHits++; }
+
+    /**
+     * Record the time taken to evaluate a script.
+     *
+     * @param nanos the elapsed time in nanoseconds.
+     */
+    void addEval(final long nanos) { evalNanos += nanos; }
+
+    /**
+     * Record the CPU time used by a budgeted evaluation.
+     *
+     * @param nanos the CPU time in nanoseconds.
+     */
+    void addCpu(final long nanos) { cpuNanos += nanos; }
+
+    /**
+     * Add all metrics recorded by another instance to this one.
+     *
+     * @param other the metrics to add.
+     */
+    void add(final ScriptMetrics other) {
+        acquireNanos += other.acquireNanos;
+        compileNanos += other.compileNanos;
+        evalNanos += other.evalNanos;
+        cpuNanos += other.cpuNanos;
+        compileHits += other.compileHits;
+        compileMisses += other.compileMisses;
+    }
+
+    long getAcquireNanos() { return acquireNanos; }
+
+    long getCompileNanos() { return compileNanos; }
+
+    long getEvalNanos() { return evalNanos; }
+
+    long getCpuNanos() { return cpuNanos; }
+
+    int getCompileHits() { return compileHits; }
+
+    int getCompileMisses() { return compileMisses; }
+}
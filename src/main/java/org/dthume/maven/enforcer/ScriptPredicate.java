@@ -0,0 +1,53 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import java.util.Map;
+
+/**
+ * A rule body implemented directly in Java, used in place of a script when
+ * a rule's language is {@code java}. The rule's script is then the fully
+ * qualified name of the implementing class, which must have a public no
+ * argument constructor, and is loaded from the plugin class path.
+ *
+ * A single instance is created per build and class loader, and may be
+ * invoked concurrently during parallel builds; implementations should
+ * therefore be thread safe.
+ *
+ * A predicate's result is judged exactly as a script's would be, so a
+ * predicate may return violation records when the rule is configured with
+ * a {@link StructuredResultEvaluator}, such as
+ * {@link ViolationsResultEvaluator}.
+ *
+ * @author dth
+ */
+public interface ScriptPredicate {
+    /**
+     * Evaluate this predicate.
+     *
+     * @param bindings the bindings which would have been made available to
+     * a script, keyed by name.
+     * @return the result, which is passed to the rule's
+     * {@link ScriptResultEvaluator} in the same way as a script result:
+     * commonly a {@link Boolean}, or violation records.
+     * @throws Exception if evaluation fails, which fails the rule.
+     */
+    Object test(Map<String, Object> bindings) throws Exception;
+}
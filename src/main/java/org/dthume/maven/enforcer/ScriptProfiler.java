@@ -0,0 +1,192 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A sampling profiler for script evaluations, which periodically captures
+ * the stack of the evaluating thread and counts the distinct stacks seen.
+ *
+ * Only frames of script code are kept, recognised as those with a line
+ * number whose source is not a Java file, as is the case for the classes
+ * generated from scripts by engines such as Nashorn and Groovy. Each stack
+ * is rooted at the name of the script being evaluated, so the profile may
+ * be rendered as a flame graph from the collapsed stacks it writes.
+ *
+ * @author dth
+ */
+final class ScriptProfiler {
+    /** The default interval between samples, in milliseconds. */
+    static final long DEFAULT_INTERVAL = 5L;
+
+    /** Stands in for samples taken outside of script code. */
+    private static final String ENGINE_FRAME = "[engine]";
+
+    private final long interval;
+
+    /** Sample counts, keyed by collapsed stack; guarded by {@code this}. */
+    private final Map<String, Integer> samples =
+            new TreeMap<String, Integer>();
+
+    /**
+     * Create a profiler.
+     *
+     * @param interval the interval between samples, in milliseconds.
+     */
+    ScriptProfiler(final long interval) {
+        this.interval = Math.max(1L, interval);
+    }
+
+    /**
+     * Start sampling the current thread, which should be about to evaluate
+     * a script.
+     *
+     * @param script the name of the script being evaluated.
+     * @return the sampler, which must be stopped once evaluation completes.
+     */
+    Sampler start(final String script) {
+        final Sampler sampler = new Sampler(Thread.currentThread(), script);
+        sampler.start();
+        return sampler;
+    }
+
+    /**
+     * Get the number of samples taken so far.
+     *
+     * @return the total number of samples.
+     */
+    synchronized int getSampleCount() {
+        int count = 0;
+        for (final Integer value : samples.values()) count += value;
+        return count;
+    }
+
+    /**
+     * Get the sample counts recorded so far.
+     *
+     * @return a copy of the sample counts, keyed by collapsed stack.
+     */
+    synchronized Map<String, Integer> getSamples() {
+        return new TreeMap<String, Integer>(samples);
+    }
+
+    /**
+     * Write the samples recorded so far in collapsed stack format, one
+     * stack per line with frames separated by semicolons, followed by a
+     * space and the number of times the stack was sampled.
+     *
+     * @param file the file to write.
+     * @throws IOException if the profile cannot be written.
+     */
+    void write(final File file) throws IOException {
+        final File parent = file.getParentFile();
+        if (null != parent && !parent.isDirectory() && !parent.mkdirs())
+            throw new IOException("Cannot create directory: " + parent);
+
+        final Writer out =
+                new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            for (final Map.Entry<String, Integer> entry
+                    : getSamples().entrySet())
+                out.write(entry.getKey() + " " + entry.getValue() + "\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    private void record(final String script,
+            final StackTraceElement[] stack) {
+        final StringBuilder sb = new StringBuilder(script);
+        boolean inScript = false;
+        // Stack traces are leaf first, collapsed stacks root first
+        for (int ii = stack.length - 1; ii >= 0; ii--) {
+            final StackTraceElement frame = stack[ii];
+            if (isScriptFrame(frame)) {
+                sb.append(';').append(toFrameName(frame));
+                inScript = true;
+            }
+        }
+        if (!inScript) sb.append(';').append(ENGINE_FRAME);
+
+        final String key = sb.toString();
+        synchronized (this) {
+            final Integer count = samples.get(key);
+            samples.put(key, null == count ? 1 : count + 1);
+        }
+    }
+
+    private static boolean isScriptFrame(final StackTraceElement frame) {
+        final String file = frame.getFileName();
+        return null != file && !file.endsWith(".java")
+                && 0 <= frame.getLineNumber();
+    }
+
+    private static String toFrameName(final StackTraceElement frame) {
+        return (frame.getMethodName() + " (" + frame.getFileName() + ":"
+                + frame.getLineNumber() + ")").replace(';', ',');
+    }
+
+    /**
+     * Samples a single thread until stopped.
+     */
+    final class Sampler extends Thread {
+        private final Thread target;
+        private final String script;
+        private volatile boolean running = true;
+
+        Sampler(final Thread target, final String script) {
+            super("script-profiler");
+            setDaemon(true);
+            this.target = target;
+            this.script = script;
+        }
+
+        public void run() {
+            while (running) {
+                try {
+                    Thread.sleep(interval);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (running) record(script, target.getStackTrace());
+            }
+        }
+
+        /**
+         * Stop sampling, waiting for any sample in progress to complete.
+         */
+        void finish() {
+            running = false;
+            interrupt();
+            try {
+                join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
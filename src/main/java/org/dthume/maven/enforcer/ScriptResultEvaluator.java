@@ -24,6 +24,9 @@ package org.dthume.maven.enforcer;
  * evaluation inside {@link ScriptRule} should cause the rule
  * to throw an exception.
  *
+ * Implementations may be invoked concurrently during parallel builds, and
+ * should therefore be thread safe.
+ *
  * @author dth
  */
 public interface ScriptResultEvaluator {
@@ -21,49 +21,65 @@ package org.dthume.maven.enforcer;
 
 import static org.apache.commons.codec.digest.DigestUtils.md5Hex;
 import static org.apache.commons.lang3.StringUtils.isBlank;
-import static org.apache.commons.lang3.StringUtils.join;
-import static org.dthume.maven.util.LogWriter.LogLevel.ERROR;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.io.StringReader;
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-
-import javax.script.Bindings;
-import javax.script.ScriptContext;
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
-import javax.script.ScriptException;
-import javax.script.SimpleScriptContext;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.maven.enforcer.rule.api.EnforcerRule;
 import org.apache.maven.enforcer.rule.api.EnforcerRuleException;
 import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
 import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.component.configurator.expression.ExpressionEvaluationException;
-import org.dthume.maven.util.LogWriter;
 
 /**
  * An {@link EnforcerRule} which evaluates a JSR223 compliant script.
  *
+ * Rules may be executed concurrently in parallel builds; each evaluation
+ * uses its own engine, context and bindings, while any state shared between
+ * evaluations (the validation and session contexts) is thread safe.
+ *
  * @author dth
  */
 public final class ScriptRule implements EnforcerRule {
-    /** The expression to get the user specified source file encoding. */
-    private static final String SOURCE_ENCODING =
-            "${project.build.sourceEncoding}";
+    /** Execution outcomes, as recorded in metrics. */
+    private static final String PASS = "pass";
+    private static final String FAIL = "fail";
+    private static final String ERROR = "error";
+    private static final String SKIPPED = "skipped";
+    private static final String OVERRUN = "overrun";
+
+    /** Budget actions: fail the rule, or only warn, on overrunning. */
+    private static final String BUDGET_FAIL = "fail";
+    private static final String BUDGET_WARN = "warn";
+
+    /** Rule scopes, determining how widely results are shared. */
+    private static final String SCOPE_MODULE = "module";
+    private static final String SCOPE_PARENT = "parent";
+    private static final String SCOPE_SESSION = "session";
+
+    /** The prefix of the session scope attributes holding input digests. */
+    private static final String INPUTS_ATTRIBUTE =
+            ScriptRule.class.getName() + ".inputs.";
 
     /** The key to bind the rule helper to during script evaluation. */
     private String ruleHelperKey = null;
 
+    /** The key to bind the memoizing rule helper facade to, if any. */
+    private String lazyHelperKey = null;
+
     /** The scripting language to use, defaults to "javascript". */
     private String language = "javascript";
 
@@ -76,11 +92,34 @@ public final class ScriptRule implements EnforcerRule {
     /** The key to bind the validation context object to. */
     private String validationContextKey = "ruleContext";
 
-    /** The validation context object, if this rule supports caching. */
-    private final Object validationContext = new HashMap<Object, Object>();
+    /**
+     * The validation context object, if this rule supports caching. Scoped
+     * to this rule instance, and hence to a single module, but may be read
+     * from other threads when validating cached results in parallel builds,
+     * hence synchronized; unlike the session context, it keeps the
+     * {@link HashMap} semantics scripts have always relied upon, such as
+     * {@code null} keys and values.
+     */
+    private final Object validationContext = Collections.synchronizedMap(
+            new HashMap<Object, Object>());
+
+    /** The key to bind the session wide context object to, if any. */
+    private String sessionContextKey = null;
+
+    /** The key to bind the project dependency index to, if any. */
+    private String dependencyIndexKey = null;
+
+    /** The key to bind the read-only project view to, if any. */
+    private String projectViewKey = null;
+
+    /** Whether to refuse bindings which expose the container. */
+    private boolean restrictedBindings = false;
+
+    /** How widely the result of the rule is shared, by default not. */
+    private String scope = SCOPE_MODULE;
 
     /** Cached instance of the rule helper, to support rule caching. */
-    private EnforcerRuleHelper cachedHelper = null;
+    private volatile EnforcerRuleHelper cachedHelper = null;
 
     /** Inline script to use to validate previous executions. */
     private String validatorScript = null;
@@ -99,12 +138,127 @@ public final class ScriptRule implements EnforcerRule {
     /** The message to place into the exception upon rule failure. */
     private String message = "Script evaluated to false";
 
+    /** The maximum number of idle engines to retain for reuse. */
+    private int enginePoolSize = ScriptEnginePool.DEFAULT_MAX_IDLE;
+
+    /** The time, in milliseconds, after which idle engines are discarded. */
+    private long engineIdleTimeout = ScriptEnginePool.DEFAULT_IDLE_TIMEOUT;
+
+    /** How script output is written to the log. */
+    private String scriptOutput = ScriptEvaluation.OUTPUT_DIRECT;
+
+    /** Whether buffered script output is logged by a background thread. */
+    private boolean asyncScriptOutput = false;
+
+    /** The maximum number of characters of script output to buffer. */
+    private int scriptOutputBufferSize =
+            ScriptEvaluation.DEFAULT_OUTPUT_BUFFER;
+
+    /** The directory holding the persistent result cache, if enabled. */
+    private File resultCacheDirectory = null;
+
+    /** Properties whose values form part of the persistent cache key. */
+    private List<String> resultCacheProperties =
+            java.util.Collections.emptyList();
+
+    /** The maximum number of keys retained by the persistent cache. */
+    private int resultCacheSize = PersistentResultCache.DEFAULT_MAX_ENTRIES;
+
+    /** The wall clock time, in milliseconds, allowed for evaluation. */
+    private long timeout = 0L;
+
+    /** The CPU time, in milliseconds, allowed for evaluation. */
+    private long cpuTimeBudget = 0L;
+
+    /** What to do when evaluation overruns its budget. */
+    private String budgetAction = BUDGET_FAIL;
+
+    /** Whether to record timings of this rule for the session summary. */
+    private boolean metrics = false;
+
+    /** The file to write the session metrics report to, if any. */
+    private File metricsReport = null;
+
+    /** Whether to sample script evaluations and write a profile. */
+    private boolean profile = false;
+
+    /** The interval between profile samples, in milliseconds. */
+    private long profileInterval = ScriptProfiler.DEFAULT_INTERVAL;
+
+    /** Files, directories or globs whose content the result depends upon. */
+    private List<File> watchedFiles = java.util.Collections.emptyList();
+
+    /** Properties whose values the result depends upon. */
+    private List<String> watchedProperties =
+            java.util.Collections.emptyList();
+
+    /** Whether the result depends upon the resolved project dependencies. */
+    private boolean watchDependencies = false;
+
+    /** The snapshot of watched inputs taken at the last success, if any. */
+    private volatile InputSnapshot snapshot = null;
+
+    /** Inline script evaluated once per session over all module facts. */
+    private String aggregateScript = null;
+
+    /** File containing the script evaluated over all module facts. */
+    private File aggregateScriptFile = null;
+
+    /** The key to bind the collected module facts to. */
+    private String factsKey = "moduleFacts";
+
+    /** Whether to prepare engines and scripts in the background. */
+    private boolean warmup = false;
+
+    /** The warmup started for this rule, if any. */
+    private ScriptWarmup preload = null;
+
+    /** Whether to compile all scripts before evaluating any. */
+    private boolean syntaxCheck = false;
+
+    /**
+     * The digest of the configuration, excluding the content of script
+     * files; computed on first use and discarded by the setters of the
+     * parameters it covers.
+     */
+    private volatile String configurationDigest = null;
+
+    /** The library function to invoke instead of evaluating the script. */
+    private String function = null;
+
+    /** The arguments to invoke {@link #function} with. */
+    private List<Object> functionArguments =
+            java.util.Collections.emptyList();
+
+    /**
+     * Create a rule, to be configured and then executed or validated on the
+     * current thread.
+     */
+    public ScriptRule() {
+        RuleMetrics.configured();
+    }
+
     /**
      * Set the key to bind the {@link EnforcerRuleHelper} to.
      * 
      * @param key the name to bind the {@code EnforcerRuleHelper} to.
      */
-    public void setRuleHelperKey(String key) { ruleHelperKey = key; }
+    public void setRuleHelperKey(String key) {
+        ruleHelperKey = key;
+        configurationDigest = null;
+    }
+
+    /**
+     * Set the key to bind a {@link MemoizingRuleHelper} to. Expressions and
+     * components are resolved through it on first access only, and memoized
+     * for the remainder of the evaluation.
+     *
+     * @param key the name to bind the {@code MemoizingRuleHelper} to.
+     */
+    public void setLazyHelperKey(String key) {
+        lazyHelperKey = key;
+        configurationDigest = null;
+    }
 
     /**
      * Set the script source to evaluate.
@@ -113,7 +267,10 @@ public final class ScriptRule implements EnforcerRule {
      *
      * @param script the inline script source to use.
      */
-    public void setScript(final String script) { this.script = script; }
+    public void setScript(final String script) {
+        this.script = script;
+        configurationDigest = null;
+    }
 
     /**
      * Set the file containing the script to evaluate.
@@ -122,14 +279,22 @@ public final class ScriptRule implements EnforcerRule {
      *
      * @param file the inline script source to use.
      */
-    public void setScriptFile(final File file) { this.scriptFile = file; }
+    public void setScriptFile(final File file) {
+        this.scriptFile = file;
+    }
 
     /**
-     * Set the scripting language to use.
+     * Set the scripting language to use. The language {@code java} is
+     * handled specially: scripts name {@link ScriptPredicate} classes,
+     * which are invoked directly rather than via a script engine.
      *
      * @param lang the scripting language to use.
      */
-    public void setLanguage(final String lang) { this.language = lang; }
+    public void setLanguage(final String lang) {
+        this.language = lang;
+        configurationDigest = null;
+        startWarmup();
+    }
 
     /**
      * Set the evaluator to use to determine if the script result is valid 
@@ -138,6 +303,7 @@ public final class ScriptRule implements EnforcerRule {
      */
     public void setResultEvaluator(ScriptResultEvaluator evaluator) {
         this.resultEvaluator = evaluator;
+        configurationDigest = null;
     }
 
     /**
@@ -147,6 +313,7 @@ public final class ScriptRule implements EnforcerRule {
      */
     public void setScriptBindings(Map<String, Object> bindings) {
         this.scriptBindings = bindings;
+        configurationDigest = null;
     }
 
     /**
@@ -155,7 +322,10 @@ public final class ScriptRule implements EnforcerRule {
      * 
      * @param message the message to place into the exception on rule failure
      */
-    public void setMessage(String message) { this.message = message; }
+    public void setMessage(String message) {
+        this.message = message;
+        configurationDigest = null;
+    }
 
     /**
      * Set the key to bind the validation context map instance to during
@@ -165,6 +335,76 @@ public final class ScriptRule implements EnforcerRule {
      */
     public void setValidationContextKey(String validationContextKey) {
         this.validationContextKey = validationContextKey;
+        configurationDigest = null;
+    }
+
+    /**
+     * Set the key to bind the session context map instance to during script
+     * evaluation. The session context is shared by all rules in all modules
+     * of the current build, and is not bound unless this key is set.
+     *
+     * @param sessionContextKey the key to bind the session context to.
+     */
+    public void setSessionContextKey(String sessionContextKey) {
+        this.sessionContextKey = sessionContextKey;
+        configurationDigest = null;
+    }
+
+    /**
+     * Set the key to bind the {@link DependencyIndex} of the current project
+     * to during script evaluation. The index is built once per module, on
+     * first use, and shared by all rules within it.
+     *
+     * @param dependencyIndexKey the key to bind the dependency index to.
+     */
+    public void setDependencyIndexKey(String dependencyIndexKey) {
+        this.dependencyIndexKey = dependencyIndexKey;
+        configurationDigest = null;
+    }
+
+    /**
+     * Set the key to bind a read-only {@link ProjectView} of the current
+     * project to during script evaluation.
+     *
+     * @param projectViewKey the key to bind the project view to.
+     */
+    public void setProjectViewKey(String projectViewKey) {
+        this.projectViewKey = projectViewKey;
+        configurationDigest = null;
+    }
+
+    /**
+     * Set whether to restrict scripts to read-only bindings, rejecting the
+     * {@link #setRuleHelperKey(String) rule helper} and
+     * {@link #setLazyHelperKey(String) lazy helper}, through which scripts
+     * can look up components and modify the project, along with any
+     * {@link #setScriptBindings(Map) script binding} of the project or
+     * session itself.
+     *
+     * @param restrictedBindings {@code true} to restrict bindings.
+     */
+    public void setRestrictedBindings(boolean restrictedBindings) {
+        this.restrictedBindings = restrictedBindings;
+    }
+
+    /**
+     * Set the scope of the rule: {@code module}, the default, evaluates the
+     * rule for every module; {@code parent} evaluates it once per parent
+     * project, and {@code session} once per session, for each distinct set
+     * of inputs, sharing the result with every other module.
+     *
+     * Inputs comprise the configuration of the rule, including its
+     * bindings as interpolated for each module, its watched inputs and its
+     * result cache properties; rules whose outcome depends on anything
+     * else should keep the default scope. Rules which bind the rule helper,
+     * lazy helper, project view or dependency index describe a single
+     * module, so must keep the default scope.
+     *
+     * @param scope the scope of the rule.
+     */
+    public void setScope(String scope) {
+        this.scope = scope;
+        configurationDigest = null;
     }
 
     /**
@@ -176,6 +416,7 @@ public final class ScriptRule implements EnforcerRule {
      */
     public void setValidatorScript(String validatorScript) {
         this.validatorScript = validatorScript;
+        configurationDigest = null;
     }
 
     /**
@@ -189,26 +430,394 @@ public final class ScriptRule implements EnforcerRule {
         this.validatorScriptFile = validatorScriptFile;
     }
 
+    /**
+     * Set the maximum number of idle engines retained, per language, for
+     * reuse by subsequent rule executions.
+     *
+     * @param enginePoolSize the maximum number of idle engines to retain.
+     */
+    public void setEnginePoolSize(int enginePoolSize) {
+        this.enginePoolSize = enginePoolSize;
+    }
+
+    /**
+     * Set the time after which an idle engine is discarded from the pool.
+     *
+     * @param engineIdleTimeout the idle timeout in milliseconds, or a
+     * negative value to never discard idle engines.
+     */
+    public void setEngineIdleTimeout(long engineIdleTimeout) {
+        this.engineIdleTimeout = engineIdleTimeout;
+    }
+
+    /**
+     * Set how script output is written to the log: {@code direct} logs each
+     * write as it happens, {@code line} buffers output and logs each
+     * complete line, and {@code evaluation} buffers output and logs it once
+     * the script completes.
+     *
+     * @param scriptOutput the script output mode.
+     */
+    public void setScriptOutput(String scriptOutput) {
+        this.scriptOutput = scriptOutput;
+    }
+
+    /**
+     * Set whether buffered script output is handed to a background thread
+     * to be logged, rather than being logged by the evaluating thread.
+     *
+     * @param asyncScriptOutput {@code true} to log output asynchronously.
+     */
+    public void setAsyncScriptOutput(boolean asyncScriptOutput) {
+        this.asyncScriptOutput = asyncScriptOutput;
+    }
+
+    /**
+     * Set the maximum number of characters of script output to buffer;
+     * output beyond this is logged immediately.
+     *
+     * @param scriptOutputBufferSize the maximum output to buffer.
+     */
+    public void setScriptOutputBufferSize(int scriptOutputBufferSize) {
+        this.scriptOutputBufferSize = scriptOutputBufferSize;
+    }
+
+    /**
+     * Set the directory in which to persist successful results across
+     * builds. Persistent caching is disabled unless this is set.
+     *
+     * @param resultCacheDirectory the directory to hold the result cache.
+     */
+    public void setResultCacheDirectory(File resultCacheDirectory) {
+        this.resultCacheDirectory = resultCacheDirectory;
+    }
+
+    /**
+     * Set the names of properties which the script result depends upon, in
+     * addition to its configuration and script file content.
+     *
+     * @param properties the properties to include in the result cache key.
+     */
+    public void setResultCacheProperties(List<String> properties) {
+        this.resultCacheProperties = properties;
+    }
+
+    /**
+     * Set the maximum number of results retained by the persistent cache.
+     *
+     * @param resultCacheSize the maximum number of results to retain.
+     */
+    public void setResultCacheSize(int resultCacheSize) {
+        this.resultCacheSize = resultCacheSize;
+    }
+
+    /**
+     * Set the wall clock time allowed for script evaluation; evaluations
+     * which overrun are interrupted and abandoned.
+     *
+     * @param timeout the timeout in milliseconds, or zero for no limit.
+     */
+    public void setTimeout(long timeout) { this.timeout = timeout; }
+
+    /**
+     * Set the CPU time allowed for script evaluation; evaluations which
+     * overrun are interrupted and abandoned. Ignored if the JVM does not
+     * support measuring thread CPU time.
+     *
+     * @param cpuTimeBudget the CPU time in milliseconds, or zero for no
+     * limit.
+     */
+    public void setCpuTimeBudget(long cpuTimeBudget) {
+        this.cpuTimeBudget = cpuTimeBudget;
+    }
+
+    /**
+     * Set what to do when script evaluation overruns its budget:
+     * {@code fail} (the default) fails the rule, while {@code warn} logs a
+     * warning and lets the build continue.
+     *
+     * @param budgetAction the action to take on overrunning.
+     */
+    public void setBudgetAction(String budgetAction) {
+        this.budgetAction = budgetAction;
+    }
+
+    /**
+     * Set whether to record the timings of this rule, which are summarised
+     * at the end of the session.
+     *
+     * @param metrics {@code true} to record timings.
+     */
+    public void setMetrics(boolean metrics) { this.metrics = metrics; }
+
+    /**
+     * Set the file to write a report of the timings of all rules in the
+     * session to, as CSV if the file name ends with {@code .csv}, and
+     * otherwise as JSON. Setting a report file implies {@link #metrics}.
+     *
+     * @param metricsReport the file to write the metrics report to.
+     */
+    public void setMetricsReport(File metricsReport) {
+        this.metricsReport = metricsReport;
+    }
+
+    /**
+     * Set whether to sample the evaluating thread while scripts run, and
+     * write the sampled script stacks, in collapsed stack format, to
+     * {@code script-profiles} under the build directory.
+     *
+     * @param profile {@code true} to profile script evaluation.
+     */
+    public void setProfile(boolean profile) { this.profile = profile; }
+
+    /**
+     * Set the interval between profile samples.
+     *
+     * @param profileInterval the sample interval in milliseconds.
+     */
+    public void setProfileInterval(long profileInterval) {
+        this.profileInterval = profileInterval;
+    }
+
+    /**
+     * Set the files which the script result depends upon. Directories are
+     * watched recursively, and any path containing {@code *} or {@code ?}
+     * is treated as an Ant style glob, such as {@code src/**}{@code /*.xml}.
+     *
+     * @param watchedFiles the files, directories or globs to watch.
+     */
+    public void setWatchedFiles(List<File> watchedFiles) {
+        this.watchedFiles = watchedFiles;
+        configurationDigest = null;
+    }
+
+    /**
+     * Set the names of properties which the script result depends upon.
+     *
+     * @param watchedProperties the properties to watch.
+     */
+    public void setWatchedProperties(List<String> watchedProperties) {
+        this.watchedProperties = watchedProperties;
+        configurationDigest = null;
+    }
+
+    /**
+     * Set whether the script result depends upon the coordinates and scopes
+     * of the resolved project dependencies.
+     *
+     * @param watchDependencies {@code true} to watch dependencies.
+     */
+    public void setWatchDependencies(boolean watchDependencies) {
+        this.watchDependencies = watchDependencies;
+        configurationDigest = null;
+    }
+
+    /**
+     * Set an inline script to evaluate once per session, at the last module
+     * of the reactor, over the facts collected from every module. Setting
+     * an aggregate script changes the role of {@link #script}: its result
+     * is collected as the facts of the current module, rather than being
+     * checked.
+     *
+     * NOTE: Do not specify both this <i>and</i> {@link #aggregateScriptFile}.
+     *
+     * @param aggregateScript the aggregate script source.
+     */
+    public void setAggregateScript(String aggregateScript) {
+        this.aggregateScript = aggregateScript;
+        configurationDigest = null;
+    }
+
+    /**
+     * Set a script file to evaluate once per session over the facts
+     * collected from every module.
+     *
+     * NOTE: Do not specify both this <i>and</i> {@link #aggregateScript}.
+     *
+     * @param aggregateScriptFile the aggregate script file.
+     */
+    public void setAggregateScriptFile(File aggregateScriptFile) {
+        this.aggregateScriptFile = aggregateScriptFile;
+    }
+
+    /**
+     * Set the key to bind the collected module facts to during evaluation
+     * of the aggregate script; a read only map from
+     * {@code groupId:artifactId} to facts, in reactor order.
+     *
+     * @param factsKey the key to bind the module facts to.
+     */
+    public void setFactsKey(String factsKey) {
+        this.factsKey = factsKey;
+        configurationDigest = null;
+    }
+
+    /**
+     * Set whether to bootstrap the script engine, and compile the scripts of
+     * this rule, on a background thread as soon as the rule is configured,
+     * rather than when the rule executes.
+     *
+     * @param warmup {@code true} to warm up in the background.
+     */
+    public void setWarmup(boolean warmup) {
+        this.warmup = warmup;
+        startWarmup();
+    }
+
+    /**
+     * Set whether to compile the script, validator script and aggregate
+     * script before evaluating any of them, so that syntax errors fail the
+     * rule immediately. Checks which pass are not repeated in the session.
+     *
+     * @param syntaxCheck {@code true} to check script syntax up front.
+     */
+    public void setSyntaxCheck(boolean syntaxCheck) {
+        this.syntaxCheck = syntaxCheck;
+    }
+
+    /**
+     * Set the name of a function to invoke, treating the script or script
+     * file as a library which is loaded once per engine rather than
+     * evaluated for every execution. Requires an engine implementing
+     * {@link javax.script.Invocable}.
+     *
+     * @param function the name of the function to invoke.
+     */
+    public void setFunction(String function) {
+        this.function = function;
+        configurationDigest = null;
+    }
+
+    /**
+     * Set the arguments to invoke the {@link #setFunction(String) function}
+     * with, in order.
+     *
+     * @param functionArguments the function arguments.
+     */
+    public void setFunctionArguments(List<Object> functionArguments) {
+        this.functionArguments = functionArguments;
+        configurationDigest = null;
+    }
+
+    /**
+     * Start warming up an engine for the language, unless already started;
+     * scripts are read only once the engine is ready, by which time the
+     * remaining parameters have been set, whatever order they appear in.
+     */
+    private void startWarmup() {
+        if (warmup && (null == preload || !preload.isFor(language)))
+            preload = ScriptWarmup.start(language, new WarmupScripts());
+    }
+
+    /** Hand a finished warmup to the pool, without waiting for it. */
+    private void adoptWarmup(final EnforcerRuleHelper helper) {
+        final ScriptWarmup started = preload;
+        if (null != started && started.isFor(language))
+            started.offerTo(ScriptEnginePool.forLanguage(helper, language));
+    }
+
     /** {@inheritDoc} */
     public boolean isCacheable() {
+        return hasWatchedInputs() || hasValidator();
+    }
+
+    private boolean hasWatchedInputs() {
+        return !(watchedFiles.isEmpty() && watchedProperties.isEmpty())
+                || watchDependencies;
+    }
+
+    /**
+     * Determine whether this rule watches inputs which differ from module to
+     * module, being evaluated against the project.
+     */
+    private boolean hasModuleInputs() {
+        return !watchedProperties.isEmpty() || watchDependencies;
+    }
+
+    private boolean hasValidator() {
         return !(null == validatorScriptFile && isBlank(validatorScript));
     }
 
+    private boolean isAggregate() {
+        return !(null == aggregateScriptFile && isBlank(aggregateScript));
+    }
+
+    private boolean isShared() { return !SCOPE_MODULE.equals(scope); }
+
+    /**
+     * Determine whether the script sees data of the module it executes
+     * for, so its result cannot stand for that of any other module.
+     */
+    private boolean bindsModule() {
+        return !(isBlank(ruleHelperKey) && isBlank(lazyHelperKey)
+                && isBlank(projectViewKey) && isBlank(dependencyIndexKey));
+    }
+
     /** {@inheritDoc} */
     public boolean isResultValid(final EnforcerRule cached) {
+        final boolean valid = isCachedResultValid(cached);
+        // Otherwise the rule is executed, and finishes there
+        if (valid)
+            RuleMetrics.finished(((ScriptRule) cached).cachedHelper, false);
+        return valid;
+    }
+
+    private boolean isCachedResultValid(final EnforcerRule cached) {
         validateConfig();
 
         if (!(isCacheable() && cached instanceof ScriptRule))
             return false;
 
         final ScriptRule rule = (ScriptRule) cached;
+
+        // The enforcer offers no helper for the module being validated, so
+        // module specific inputs can only be checked here for the module
+        // which took the snapshot; for any other, execution compares them
+        if (hasModuleInputs() && this != rule) return false;
+
+        final long started = System.nanoTime();
+        if (hasWatchedInputs() && !rule.isSnapshotCurrent()) {
+            recordMetrics(rule.cachedHelper, "validate", FAIL, "snapshot",
+                    null, started);
+            return false;
+        }
+
+        if (!hasValidator()) {
+            recordMetrics(rule.cachedHelper, "validate", PASS, "snapshot",
+                    null, started);
+            return true;
+        }
+
+        final Handler handler = new Handler(rule.cachedHelper,
+                rule.validatorScript,
+                rule.validatorScriptFile,
+                rule.validationContext);
+        String outcome = ERROR;
+        try {
+            final boolean valid = null == handler.execute();
+            outcome = valid ? PASS : FAIL;
+            return valid;
+        } catch (ScriptBudget.Exceeded e) {
+            outcome = OVERRUN;
+            return false;
+        } catch (EnforcerRuleException e) {
+            return false;
+        } finally {
+            recordMetrics(rule.cachedHelper, "validate", outcome, "off",
+                    handler.getMetrics(), started);
+        }
+    }
+
+    private boolean isSnapshotCurrent() {
+        final InputSnapshot taken = snapshot;
+        if (null == taken || null == cachedHelper) return false;
+
         try {
-            return new Handler(rule.cachedHelper,
-                    rule.validatorScript,
-                    rule.validatorScriptFile,
-                    rule.validationContext)
-                .execute();
+            return taken.isCurrent(cachedHelper, watchedFiles,
+                    watchedProperties, watchDependencies);
         } catch (EnforcerRuleException e) {
+            cachedHelper.getLog()
+                .debug("Cannot check watched inputs, rule is stale", e);
             return false;
         }
     }
@@ -216,63 +825,432 @@ public final class ScriptRule implements EnforcerRule {
     /** {@inheritDoc} */
     public String getCacheId() {
         if (!isCacheable()) return java.util.UUID.randomUUID().toString();
-        
-        return md5Hex(toCacheId(
+
+        return getConfigurationId();
+    }
+
+    /**
+     * Identifies the configuration of this rule. Only the content hashes of
+     * script files, themselves memoized until the files change, are
+     * recomputed on each call.
+     */
+    private String getConfigurationId() {
+        return ContentHashes.ofFields(
+                "configuration", getConfigurationDigest(),
+                "scriptFile", toContentHashOrNull(scriptFile),
+                "validatorScriptFile", toContentHashOrNull(validatorScriptFile),
+                "aggregateScriptFile",
+                toContentHashOrNull(aggregateScriptFile));
+    }
+
+    private String getConfigurationDigest() {
+        String digest = configurationDigest;
+        if (null == digest)
+            configurationDigest = digest = digestConfiguration();
+        return digest;
+    }
+
+    private String digestConfiguration() {
+        return ContentHashes.ofFields(
                 "language", language,
                 "script", script,
-                "scriptFile", toPathOrNull(scriptFile),
                 "validatorScript", validatorScript,
-                "validatorScriptFile", toPathOrNull(validatorScriptFile),
                 "message", message,
                 "ruleHelperKey", ruleHelperKey,
+                "lazyHelperKey", lazyHelperKey,
                 "validationContextKey", validationContextKey,
-                "scriptBindings", toCacheId(scriptBindings)));
-    }
-    
-    private String toPathOrNull(final File file) {
-        return null == file ? null : file.getAbsolutePath();
+                "sessionContextKey", sessionContextKey,
+                "dependencyIndexKey", dependencyIndexKey,
+                "projectViewKey", projectViewKey,
+                "scriptBindings", scriptBindings,
+                "watchedFiles", watchedFiles,
+                "watchedProperties", watchedProperties,
+                "watchDependencies", watchDependencies,
+                "aggregateScript", aggregateScript,
+                "factsKey", factsKey,
+                "function", function,
+                "functionArguments", functionArguments,
+                "resultEvaluator", describeResultEvaluator(),
+                "scope", scope);
     }
 
-    private String toCacheId(final Object...params) {
-        final StringBuilder sb = new StringBuilder();
-        for (int ii = 0; ii < params.length; ii+=2) {
-            if (0 < ii) sb.append(",");
+    /**
+     * Describe the result evaluator by its class and the fields the plugin
+     * may have configured on it; fields holding anything other than values
+     * are described by their class alone, as their string form may not be
+     * stable.
+     */
+    private Map<String, Object> describeResultEvaluator() {
+        final Map<String, Object> description = new TreeMap<String, Object>();
+        if (null == resultEvaluator) return description;
 
-            sb.append(params[ii])
-                .append("=<[[")
-                .append(params[ii+1])
-                .append("]]>");
+        description.put("class", resultEvaluator.getClass().getName());
+        for (Class<?> c = resultEvaluator.getClass(); Object.class != c;
+                c = c.getSuperclass()) {
+            for (final Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())
+                        || field.isSynthetic())
+                    continue;
+
+                final String name = c.getName() + "." + field.getName();
+                try {
+                    field.setAccessible(true);
+                    final Object value = field.get(resultEvaluator);
+                    description.put(name, isValue(value)
+                            ? value : value.getClass().getName());
+                } catch (Exception e) {
+                    description.put(name, "<inaccessible>");
+                }
+            }
         }
-        
-        return sb.toString();
+        return description;
     }
-    
-    private String toCacheId(Map<String, Object> map) {
-        final List<String> keys = new ArrayList<String>(map.keySet());
-        java.util.Collections.sort(keys);
-        
-        final List<String> values = new ArrayList<String>(keys.size());
-        for (final String key : keys)
-            values.add(key + "=" + map.get(key));
-        
-        return new StringBuilder("{")
-            .append(join(values, ","))
-            .append("}")
-            .toString();
+
+    private static boolean isValue(final Object value) {
+        return null == value || value instanceof CharSequence
+                || value instanceof Number || value instanceof Boolean
+                || value instanceof Character || value instanceof File
+                || value instanceof Enum<?> || value instanceof Collection<?>
+                || value instanceof Map<?, ?> || value.getClass().isArray();
+    }
+
+    private String toContentHashOrNull(final File file) {
+        if (null == file) return null;
+
+        try {
+            return ContentHashes.ofFile(file);
+        } catch (IOException e) {
+            // Unreadable files will fail on execution, so never match
+            return "unreadable:" + file.getAbsolutePath();
+        }
     }
 
     /** {@inheritDoc} */
     public void execute(final EnforcerRuleHelper helper)
             throws EnforcerRuleException {
+        try {
+            executeRule(helper);
+        } finally {
+            RuleMetrics.finished(helper, true);
+        }
+    }
+
+    private void executeRule(final EnforcerRuleHelper helper)
+            throws EnforcerRuleException {
+        final long started = System.nanoTime();
         cachedHelper = helper;
 
         validateConfig();
 
+        final Log log = helper.getLog();
+        // Taken before evaluation, so inputs changed meanwhile are stale
+        final InputSnapshot inputs = hasWatchedInputs()
+                ? InputSnapshot.take(helper, watchedFiles, watchedProperties,
+                        watchDependencies)
+                : null;
+        final PersistentResultCache resultCache = getResultCache(log);
+        final String resultKey = null == resultCache
+                ? null : getResultCacheKey(helper, inputs);
+
+        if (null != resultKey && isCachedResult(resultCache, resultKey, log)) {
+            log.debug("Inputs unchanged since last success, skipping rule");
+            recordMetrics(helper, "execute", SKIPPED, "hit", null, started);
+            return;
+        }
+
+        if (null != inputs && isSessionResult(helper, inputs)) {
+            log.debug("Inputs unchanged since an identical rule passed in "
+                    + "this session, skipping rule");
+            recordMetrics(helper, "execute", SKIPPED, "hit", null, started);
+            return;
+        }
+
+        adoptWarmup(helper);
+
         final Handler handler =
                 new Handler(helper, script, scriptFile, validationContext);
+        handler.libraryFunction = function;
+        if (profile) handler.profiler = new ScriptProfiler(profileInterval);
+        String outcome = ERROR;
+        String cache = null == resultKey ? "off" : "miss";
+        try {
+            new Preflight(language, syntaxCheck)
+                .requireInvocable(!isBlank(function))
+                .add(script, scriptFile)
+                .add(validatorScript, validatorScriptFile)
+                .add(aggregateScript, aggregateScriptFile)
+                .run(helper);
+
+            final List<Violation> violations;
+            if (isAggregate()) {
+                violations = aggregate(helper, handler);
+            } else if (isShared()) {
+                violations = share(helper, inputs, handler);
+                // Only the module which evaluated the rule has metrics
+                if (null == handler.getMetrics()) cache = "shared";
+            } else {
+                violations = handler.execute();
+            }
+            if (null != violations) {
+                outcome = FAIL;
+                throw new EnforcerRuleException(
+                        toFailureMessage(violations));
+            }
+            outcome = PASS;
+            snapshot = inputs;
+            if (null != inputs)
+                getSessionInputs(helper).set(inputs.getDigest());
+        } catch (ScriptBudget.Exceeded e) {
+            outcome = OVERRUN;
+            if (!BUDGET_WARN.equals(budgetAction)) throw e;
+
+            log.warn(e.getMessage() + "; ignoring as budgetAction is warn");
+            return;
+        } finally {
+            recordMetrics(helper, "execute", outcome, cache,
+                    handler.getMetrics(), started);
+            writeProfile(helper, handler.profiler);
+        }
+
+        if (null != resultKey)
+            recordResult(resultCache, resultKey, log);
+    }
+
+    /**
+     * Determine whether an identically configured rule has passed in the
+     * current session, in any module, with the same watched inputs, as
+     * taken with the helper of the current module; or, for a rule binding
+     * data of its module, in the current module only. Rules with a
+     * validator or aggregate script must always execute.
+     */
+    private boolean isSessionResult(final EnforcerRuleHelper helper,
+            final InputSnapshot inputs) {
+        return !(hasValidator() || isAggregate())
+                && inputs.getDigest().equals(getSessionInputs(helper).get());
+    }
 
-        if (!handler.execute())
-            throw new EnforcerRuleException(message);
+    /**
+     * Get the digest of the watched inputs at the last success of this
+     * rule's configuration in the current session.
+     */
+    private AtomicReference<String> getSessionInputs(
+            final EnforcerRuleHelper helper) {
+        final RuleScope scope = RuleScope.session(helper);
+        final String key = INPUTS_ATTRIBUTE + getCacheId()
+                + (bindsModule() ? ":" + AggregateFacts.moduleKey(helper) : "");
+        final Object inputs = scope.getAttribute(key);
+        @SuppressWarnings("unchecked")
+        final AtomicReference<String> digest = (AtomicReference<String>)
+                (null != inputs ? inputs : scope.putAttributeIfAbsent(key,
+                        new AtomicReference<String>()));
+        return digest;
+    }
+
+    private String toFailureMessage(final List<Violation> violations) {
+        final StringBuilder sb = new StringBuilder(message);
+        for (final Violation violation : violations)
+            sb.append("\n - ").append(violation);
+        return sb.toString();
+    }
+
+    private List<Violation> share(final EnforcerRuleHelper helper,
+            final InputSnapshot inputs, final Handler handler)
+            throws EnforcerRuleException {
+        final StringBuilder key = new StringBuilder(scope)
+            .append(":")
+            .append(getResultCacheKey(helper, inputs));
+        if (SCOPE_PARENT.equals(scope))
+            key.append(":").append(getParentId(helper));
+
+        return SharedResults.forSession(helper).get(key.toString(),
+                new Callable<List<Violation>>() {
+                    public List<Violation> call() throws Exception {
+                        return handler.execute();
+                    }
+                });
+    }
+
+    private String getParentId(final EnforcerRuleHelper helper)
+            throws EnforcerRuleException {
+        try {
+            final Object parent = helper.evaluate("${project.parent}");
+            return parent instanceof MavenProject
+                    ? ((MavenProject) parent).getId() : "none";
+        } catch (ExpressionEvaluationException e) {
+            throw new EnforcerRuleException("Cannot evaluate parent project",
+                    e);
+        }
+    }
+
+    private List<Violation> aggregate(final EnforcerRuleHelper helper,
+            final Handler collector) throws EnforcerRuleException {
+        final String module = AggregateFacts.moduleKey(helper);
+        final List<String> reactor = AggregateFacts.reactorKeys(helper);
+        final List<String> expected = AggregateFacts.expectedKeys(helper,
+                aggregateScript, aggregateScriptFile);
+        final AggregateFacts facts =
+                AggregateFacts.forSession(helper, getAggregateId());
+
+        facts.collect(String.valueOf(module), collector.executeScript());
+
+        // Without a reactor, as when run standalone, always aggregate
+        if (!reactor.isEmpty()) {
+            final List<String> missing = facts.missing(expected);
+            if (!missing.isEmpty()) {
+                if (expected.get(expected.size() - 1).equals(module))
+                    helper.getLog().warn(String.format(
+                            "Aggregate rule has no facts from %s; its "
+                            + "aggregate script will not be evaluated until "
+                            + "they have executed the rule, and never if "
+                            + "they do not", missing));
+                return null;
+            }
+            if (!facts.claim()) return null;
+        }
+
+        helper.getLog().debug("Evaluating aggregate script over "
+                + "facts collected from all modules");
+        final Handler aggregator = new Handler(helper, aggregateScript,
+                aggregateScriptFile, validationContext);
+        aggregator.bind(factsKey, facts.view(reactor));
+        aggregator.profiler = collector.profiler;
+        try {
+            return aggregator.execute();
+        } finally {
+            collector.addMetrics(aggregator.getMetrics());
+        }
+    }
+
+    /**
+     * Identifies the facts shared by an aggregating rule across modules;
+     * unlike the configuration id, this excludes bindings and messages,
+     * which are commonly interpolated differently in each module.
+     */
+    private String getAggregateId() {
+        return ContentHashes.ofFields(
+                "language", language,
+                "script", script,
+                "scriptFile", toContentHashOrNull(scriptFile),
+                "aggregateScript", aggregateScript,
+                "aggregateScriptFile", toContentHashOrNull(aggregateScriptFile),
+                "factsKey", factsKey);
+    }
+
+    private void recordMetrics(final EnforcerRuleHelper helper,
+            final String phase, final String outcome, final String cache,
+            final ScriptMetrics scriptMetrics, final long started) {
+        if (!(metrics || null != metricsReport) || null == helper) return;
+
+        final RuleMetrics.Record record = new RuleMetrics.Record(
+                getModuleName(helper), getRuleName(), phase, outcome,
+                cache, scriptMetrics, System.nanoTime() - started);
+
+        RuleMetrics.forSession(helper)
+            .record(record, metricsReport, helper);
+    }
+
+    private String getModuleName(final EnforcerRuleHelper helper) {
+        try {
+            final Object module = helper.evaluate("${project.artifactId}");
+            return null == module ? "unknown" : module.toString();
+        } catch (ExpressionEvaluationException e) {
+            return "unknown";
+        }
+    }
+
+    private void writeProfile(final EnforcerRuleHelper helper,
+            final ScriptProfiler profiler) {
+        // Nothing is sampled when the result of another module is reused
+        if (null == profiler || 0 == profiler.getSampleCount()) return;
+
+        final File file = new File(getBuildDirectory(helper),
+                "script-profiles" + File.separator + getRuleName()
+                        + ".collapsed");
+        try {
+            profiler.write(file);
+            helper.getLog().info(String.format(
+                    "Wrote %d script profile samples to %s",
+                    profiler.getSampleCount(), file));
+        } catch (IOException e) {
+            helper.getLog().warn("Cannot write script profile to " + file, e);
+        }
+    }
+
+    private File getBuildDirectory(final EnforcerRuleHelper helper) {
+        try {
+            final Object directory =
+                    helper.evaluate("${project.build.directory}");
+            if (null != directory)
+                return new File(String.valueOf(directory));
+        } catch (ExpressionEvaluationException e) {
+            helper.getLog().debug("Cannot evaluate build directory", e);
+        }
+        return new File("target");
+    }
+
+    /**
+     * Name this rule in metrics and profiles, by its script file, if any,
+     * and its configuration id, which tells apart rules using different
+     * script files of the same name.
+     */
+    private String getRuleName() {
+        return (null == scriptFile ? "inline" : scriptFile.getName()) + "-"
+                + getConfigurationId().substring(0, 8);
+    }
+
+    private PersistentResultCache getResultCache(final Log log) {
+        if (null == resultCacheDirectory) return null;
+
+        try {
+            return PersistentResultCache.forDirectory(resultCacheDirectory,
+                    resultCacheSize);
+        } catch (IOException e) {
+            log.warn("Cannot open result cache, results will not be cached",
+                    e);
+            return null;
+        }
+    }
+
+    private String getResultCacheKey(final EnforcerRuleHelper helper,
+            final InputSnapshot inputs) throws EnforcerRuleException {
+        final StringBuilder sb = new StringBuilder(getConfigurationId());
+        if (null != inputs)
+            sb.append(",inputs=").append(inputs.getDigest());
+
+        for (final String property : resultCacheProperties) {
+            try {
+                sb.append(",")
+                    .append(property)
+                    .append("=")
+                    .append(helper.evaluate("${" + property + "}"));
+            } catch (ExpressionEvaluationException e) {
+                throw new EnforcerRuleException(
+                        "Cannot evaluate result cache property: " + property,
+                        e);
+            }
+        }
+
+        return md5Hex(sb.toString());
+    }
+
+    private boolean isCachedResult(final PersistentResultCache cache,
+            final String key, final Log log) {
+        try {
+            return cache.contains(key);
+        } catch (IOException e) {
+            log.warn("Cannot read result cache, ignoring cached results", e);
+            return false;
+        }
+    }
+
+    private void recordResult(final PersistentResultCache cache,
+            final String key, final Log log) {
+        try {
+            cache.record(key);
+        } catch (IOException e) {
+            log.warn("Cannot write result cache, result will not be cached",
+                    e);
+        }
     }
 
     private void validateConfig() throws IllegalArgumentException {
@@ -284,16 +1262,85 @@ public final class ScriptRule implements EnforcerRule {
             msg = "Cannot set both scriptFile and script";
         if (!(null == validatorScriptFile || isBlank(validatorScript)))
             msg = "Cannot set both validatorScriptFile and validatorScript";
+        if (!ScriptEvaluation.isOutputMode(scriptOutput))
+            msg = "Unknown scriptOutput: " + scriptOutput;
+        if (!(BUDGET_FAIL.equals(budgetAction)
+                || BUDGET_WARN.equals(budgetAction)))
+            msg = "Unknown budgetAction: " + budgetAction;
+        if (!(null == aggregateScriptFile || isBlank(aggregateScript)))
+            msg = "Cannot set both aggregateScriptFile and aggregateScript";
+        if (!(SCOPE_MODULE.equals(scope) || SCOPE_PARENT.equals(scope)
+                || SCOPE_SESSION.equals(scope)))
+            msg = "Unknown scope: " + scope;
+        if (profile && 1L > profileInterval)
+            msg = "profileInterval must be at least 1 ms";
+        if (isAggregate() && isShared())
+            msg = "Aggregate rules must have module scope";
+        if (isShared() && bindsModule())
+            msg = "Rules with " + scope + " scope cannot bind the rule "
+                + "helper, lazy helper, project view or dependency index, "
+                + "as their result would be shared with modules other than "
+                + "the one they describe";
+        if (isAggregate() && (isCacheable() || null != resultCacheDirectory))
+            msg = "Aggregate rules cannot be cached, as every module must "
+                + "contribute its facts";
+        if (JavaPredicateEngine.LANGUAGE.equals(language)
+                && !(null == scriptFile && null == validatorScriptFile
+                        && null == aggregateScriptFile))
+            msg = "Language java requires scripts to name ScriptPredicate "
+                + "classes, rather than script files";
+        if (JavaPredicateEngine.LANGUAGE.equals(language)
+                && !isBlank(function))
+            msg = "Language java does not support library functions";
+        if (restrictedBindings
+                && !(isBlank(ruleHelperKey) && isBlank(lazyHelperKey)))
+            msg = "Restricted bindings cannot expose the rule helper; "
+                + "use projectViewKey or dependencyIndexKey instead";
+        final String exposed = restrictedBindings
+                ? ScriptEvaluation.findUnrestrictedBinding(scriptBindings)
+                : null;
+        if (null != exposed)
+            msg = "Restricted bindings cannot expose the project or session "
+                + "through scriptBinding " + exposed
+                + "; use projectViewKey instead";
 
         if (null != msg) throw new IllegalArgumentException(msg);
     }
 
+    /**
+     * The scripts of this rule, as configured when warmup reads them.
+     */
+    private class WarmupScripts implements ScriptWarmup.Scripts {
+        public Collection<String> getScripts() {
+            final List<String> scripts = new ArrayList<String>();
+            for (final String s
+                    : new String[] { script, validatorScript, aggregateScript })
+                if (!isBlank(s)) scripts.add(s);
+            return scripts;
+        }
+
+        public Collection<File> getScriptFiles() {
+            final List<File> files = new ArrayList<File>();
+            for (final File f : new File[] { scriptFile, validatorScriptFile,
+                    aggregateScriptFile })
+                if (null != f) files.add(f);
+            return files;
+        }
+    }
+
     private class Handler {
         private final EnforcerRuleHelper helper;
         private final Log log;
         private final String script;
         private final File scriptFile;
         private final Object validationContext;
+        private final Map<String, Object> bindings =
+                new LinkedHashMap<String, Object>();
+        private ScriptMetrics metrics = null;
+        /** The function to invoke, treating the script as a library. */
+        String libraryFunction = null;
+        /** The profiler to sample evaluations with, if any. */
+        ScriptProfiler profiler = null;
 
         Handler(final EnforcerRuleHelper helper,
                 final String script,
@@ -306,117 +1353,98 @@ public final class ScriptRule implements EnforcerRule {
             this.validationContext = validationContext;
         }
 
-        public boolean execute() throws EnforcerRuleException {
+        /**
+         * Evaluate the script, and check its result.
+         *
+         * @return {@code null} if the result is valid, otherwise the
+         * violations it describes, if any.
+         */
+        public List<Violation> execute() throws EnforcerRuleException {
             final Object result = executeScript();
 
             if (log.isDebugEnabled())
                 log.debug("Script result: " + result);
             
-            return resultEvaluator.isValidResult(result);
-        }
-
-        private Object executeScript() throws EnforcerRuleException {
-            try {
-                final ScriptEngine engine = createEngine();
-                final ScriptContext context = createScriptContext();
-                final Reader reader = getScriptReader();
-
-                return engine.eval(reader, context);
-            } catch (ScriptException e) {
-                throw new EnforcerRuleException("Script Exception", e);
-            }
+            return ScriptEvaluation.check(resultEvaluator, result);
         }
 
-        private Reader getScriptReader() throws EnforcerRuleException {
-            Reader reader = null;
-            if (isBlank(script)) {
-                if (log.isDebugEnabled())
-                    log.debug("Using script file: " + scriptFile);
-
-                reader = getScriptFileReader();
-            } else {
-                log.debug("Using inline script");
-                reader = new StringReader(script);
-            }
-            return reader;
+        void bind(final String key, final Object value) {
+            bindings.put(key, value);
         }
 
-        private Reader getScriptFileReader() throws EnforcerRuleException {
+        Object executeScript() throws EnforcerRuleException {
+            final String library = isBlank(libraryFunction) ? null
+                    : ScriptEvaluation.readSource(helper, script, scriptFile);
+            final ScriptEvaluation evaluation =
+                    new ScriptEvaluation(helper, getEnginePool(library));
+            metrics = evaluation.getMetrics();
+            evaluation.setBudget(new ScriptBudget(timeout, cpuTimeBudget));
+            if (null != profiler)
+                evaluation.setProfiler(profiler, null == scriptFile
+                        ? "inline" : scriptFile.getName());
             try {
-                final InputStream in = new FileInputStream(scriptFile);
-                return new InputStreamReader(in, getSourceEncoding());
-            } catch (FileNotFoundException e) {
-                throw new EnforcerRuleException("Script file not found", e);
-            } catch (UnsupportedEncodingException e) {
-                throw new EnforcerRuleException("Unsupported encoding", e);
+                evaluation.configureOutput(scriptOutput, asyncScriptOutput,
+                        scriptOutputBufferSize);
+                configureBindings(evaluation);
+                return null == library ? evaluation.eval(script, scriptFile)
+                        : evaluation.invoke(libraryFunction,
+                                functionArguments.toArray());
+            } finally {
+                evaluation.release();
+                logBudgetUsage();
             }
         }
 
-        private String getSourceEncoding() {
-            String encoding = null;
-            try {
-                encoding = (String)helper.evaluate(SOURCE_ENCODING);
-            } catch (ExpressionEvaluationException e) {
-                log.debug("Caught exception looking up source encoding", e);
-            }
-
-            if (isBlank(encoding)) {
-                log.debug("Using platform encoding");
-                encoding = java.nio.charset.Charset.defaultCharset().name();
-            }
+        private void logBudgetUsage() {
+            if (0L < cpuTimeBudget && log.isDebugEnabled())
+                log.debug(String.format("Script used %d of %d ms CPU time",
+                        metrics.getCpuNanos() / 1000000L, cpuTimeBudget));
+        }
 
-            if (log.isDebugEnabled())
-                log.debug("Encoding to use for source files: " + encoding);
+        ScriptMetrics getMetrics() { return metrics; }
 
-            return encoding;
+        void addMetrics(final ScriptMetrics other) {
+            if (!(null == metrics || null == other)) metrics.add(other);
         }
 
-        private ScriptEngine createEngine() {
-            return new ScriptEngineManager().getEngineByName(language);
+        private ScriptEnginePool getEnginePool(final String library) {
+            final ScriptEnginePool pool = null == library
+                    ? ScriptEnginePool.forLanguage(helper, language)
+                    : ScriptEnginePool.forLibrary(helper, language, library);
+            pool.configure(enginePoolSize, engineIdleTimeout);
+            return pool;
         }
 
-        private ScriptContext createScriptContext() {
-            final SimpleScriptContext context = new SimpleScriptContext();
-            configureIO(context);
-            configureBindings(context);
-            return context;
-        }
-        
-        private void configureBindings(final ScriptContext context) {
-            final boolean debug = log.isDebugEnabled();
-            final Bindings bindings =
-                    context.getBindings(ScriptContext.ENGINE_SCOPE);
-            
+        private void configureBindings(final ScriptEvaluation evaluation)
+                throws EnforcerRuleException {
             for (final Map.Entry<String, Object> entry
-                    : scriptBindings.entrySet()) {
-                final String key = entry.getKey();
-                final Object value = entry.getValue();
+                    : scriptBindings.entrySet())
+                evaluation.bind(entry.getKey(), entry.getValue());
 
-                if (debug)
-                    log.debug(String.format("Binding %s=%s", key, value));
+            if (!isBlank(ruleHelperKey))
+                evaluation.bind(ruleHelperKey, helper);
 
-                bindings.put(key, value);
-            }
+            if (!isBlank(lazyHelperKey))
+                evaluation.bind(lazyHelperKey,
+                        new MemoizingRuleHelper(helper));
 
-            if (!isBlank(ruleHelperKey)) {
-                if (debug)
-                    log.debug("Binding rule helper to key: " + ruleHelperKey);
+            if (isCacheable())
+                evaluation.bind(validationContextKey, validationContext);
 
-                bindings.put(ruleHelperKey, helper);
-            }
+            if (!isBlank(sessionContextKey))
+                evaluation.bind(sessionContextKey,
+                        RuleScope.session(helper).getContext());
 
-            if (isCacheable()) {
-                if (debug)
-                    log.debug("Binding validation context to key: "
-                            + validationContextKey);
+            if (!isBlank(dependencyIndexKey))
+                evaluation.bind(dependencyIndexKey,
+                        DependencyIndex.forProject(helper));
 
-                bindings.put(validationContextKey, validationContext);
-            }
-        }
+            if (!isBlank(projectViewKey))
+                evaluation.bind(projectViewKey,
+                        ProjectView.forProject(helper));
 
-        private void configureIO(ScriptContext context) {
-            context.setWriter(new LogWriter(log));
-            context.setErrorWriter(new LogWriter(log, ERROR));
+            for (final Map.Entry<String, Object> entry : bindings.entrySet())
+                evaluation.bind(entry.getKey(), entry.getValue());
         }
     }
 }
@@ -0,0 +1,581 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRule;
+import org.apache.maven.enforcer.rule.api.EnforcerRuleException;
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * An {@link EnforcerRule} which evaluates a number of {@link ScriptCheck}s
+ * using a single script engine and context.
+ *
+ * Bindings are applied once, and every check is evaluated even if an
+ * earlier check fails, so that all failures are reported together.
+ *
+ * Checks may optionally be evaluated concurrently, each in its own context,
+ * in which case failures are still reported in declaration order.
+ *
+ * @author dth
+ */
+public final class ScriptRuleSet implements EnforcerRule {
+    /** The key to bind the rule helper to during script evaluation. */
+    private String ruleHelperKey = null;
+
+    /** The key to bind the memoizing rule helper facade to, if any. */
+    private String lazyHelperKey = null;
+
+    /** The scripting language to use, defaults to "javascript". */
+    private String language = "javascript";
+
+    /** The checks to evaluate, in order. */
+    private List<ScriptCheck> checks = java.util.Collections.emptyList();
+
+    /** The result evaluator - determines if each script result is valid. */
+    private ScriptResultEvaluator resultEvaluator =
+            new DefaultScriptResultEvaluator();
+
+    /** The map of values to bind into the script evaluation context. */
+    private Map<String, Object> scriptBindings =
+            java.util.Collections.emptyMap();
+
+    /** The key to bind the session wide context object to, if any. */
+    private String sessionContextKey = null;
+
+    /** The key to bind the project dependency index to, if any. */
+    private String dependencyIndexKey = null;
+
+    /** The key to bind the read-only project view to, if any. */
+    private String projectViewKey = null;
+
+    /** Whether to refuse bindings which expose the container. */
+    private boolean restrictedBindings = false;
+
+    /** Whether to prepare engines and scripts in the background. */
+    private boolean warmup = false;
+
+    /** The warmup started for this rule set, if any. */
+    private ScriptWarmup preload = null;
+
+    /** Whether to compile all checks before evaluating any. */
+    private boolean syntaxCheck = false;
+
+    /** The maximum number of checks to evaluate concurrently. */
+    private int parallelism = 1;
+
+    /** The maximum number of idle engines to retain for reuse. */
+    private int enginePoolSize = ScriptEnginePool.DEFAULT_MAX_IDLE;
+
+    /** The time, in milliseconds, after which idle engines are discarded. */
+    private long engineIdleTimeout = ScriptEnginePool.DEFAULT_IDLE_TIMEOUT;
+
+    /** How script output is written to the log. */
+    private String scriptOutput = ScriptEvaluation.OUTPUT_DIRECT;
+
+    /** Whether buffered script output is logged by a background thread. */
+    private boolean asyncScriptOutput = false;
+
+    /** The maximum number of characters of script output to buffer. */
+    private int scriptOutputBufferSize =
+            ScriptEvaluation.DEFAULT_OUTPUT_BUFFER;
+
+    /**
+     * Set the key to bind the {@link EnforcerRuleHelper} to.
+     *
+     * @param key the name to bind the {@code EnforcerRuleHelper} to.
+     */
+    public void setRuleHelperKey(String key) { ruleHelperKey = key; }
+
+    /**
+     * Set the key to bind a {@link MemoizingRuleHelper} to, shared by all
+     * checks in this set.
+     *
+     * @param key the name to bind the {@code MemoizingRuleHelper} to.
+     */
+    public void setLazyHelperKey(String key) { lazyHelperKey = key; }
+
+    /**
+     * Set the scripting language to use for all checks.
+     *
+     * @param lang the scripting language to use.
+     */
+    public void setLanguage(final String lang) {
+        this.language = lang;
+        startWarmup();
+    }
+
+    /**
+     * Set the checks to evaluate.
+     *
+     * @param checks the checks to evaluate, in order.
+     */
+    public void setChecks(List<ScriptCheck> checks) {
+        this.checks = checks;
+    }
+
+    /**
+     * Set the evaluator to use to determine if each script result is valid
+     *
+     * @param evaluator the result evaluator to use
+     */
+    public void setResultEvaluator(ScriptResultEvaluator evaluator) {
+        this.resultEvaluator = evaluator;
+    }
+
+    /**
+     * Set the map of bindings to apply during script evaluation
+     *
+     * @param bindings the map of bindings to apply during script evaluation
+     */
+    public void setScriptBindings(Map<String, Object> bindings) {
+        this.scriptBindings = bindings;
+    }
+
+    /**
+     * Set the key to bind the session context map instance to during script
+     * evaluation.
+     *
+     * @param sessionContextKey the key to bind the session context to.
+     */
+    public void setSessionContextKey(String sessionContextKey) {
+        this.sessionContextKey = sessionContextKey;
+    }
+
+    /**
+     * Set the key to bind the {@link DependencyIndex} of the current project
+     * to during script evaluation.
+     *
+     * @param dependencyIndexKey the key to bind the dependency index to.
+     */
+    public void setDependencyIndexKey(String dependencyIndexKey) {
+        this.dependencyIndexKey = dependencyIndexKey;
+    }
+
+    /**
+     * Set the key to bind a read-only {@link ProjectView} of the current
+     * project to during script evaluation.
+     *
+     * @param projectViewKey the key to bind the project view to.
+     */
+    public void setProjectViewKey(String projectViewKey) {
+        this.projectViewKey = projectViewKey;
+    }
+
+    /**
+     * Set whether to restrict checks to read-only bindings, rejecting the
+     * rule helper and lazy helper, and any script binding of the project or
+     * session itself.
+     *
+     * @param restrictedBindings {@code true} to restrict bindings.
+     */
+    public void setRestrictedBindings(boolean restrictedBindings) {
+        this.restrictedBindings = restrictedBindings;
+    }
+
+    /**
+     * Set whether to bootstrap the script engine, and compile the checks of
+     * this rule set, on a background thread as soon as the rule set is
+     * configured, rather than when it executes.
+     *
+     * @param warmup {@code true} to warm up in the background.
+     */
+    public void setWarmup(boolean warmup) {
+        this.warmup = warmup;
+        startWarmup();
+    }
+
+    /**
+     * Set whether to compile every check before evaluating any, so that a
+     * syntax error fails the rule set immediately, rather than being
+     * reported as a failed check.
+     *
+     * @param syntaxCheck {@code true} to check script syntax up front.
+     */
+    public void setSyntaxCheck(boolean syntaxCheck) {
+        this.syntaxCheck = syntaxCheck;
+    }
+
+    /**
+     * Set the maximum number of checks to evaluate concurrently. Checks
+     * evaluated concurrently do not share a context, so must not rely on
+     * state left behind by earlier checks.
+     *
+     * @param parallelism the maximum number of concurrent evaluations;
+     * {@code 1}, the default, evaluates checks one after another.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Start warming up an engine for the language, unless already started;
+     * checks are read only once the engine is ready.
+     */
+    private void startWarmup() {
+        if (warmup && (null == preload || !preload.isFor(language)))
+            preload = ScriptWarmup.start(language, new WarmupScripts());
+    }
+
+    /** Hand a finished warmup to the pool, without waiting for it. */
+    private void adoptWarmup(final EnforcerRuleHelper helper) {
+        final ScriptWarmup started = preload;
+        if (null != started && started.isFor(language))
+            started.offerTo(getEnginePool(helper));
+    }
+
+    /**
+     * Set the maximum number of idle engines retained, per language, for
+     * reuse by subsequent rule executions.
+     *
+     * @param enginePoolSize the maximum number of idle engines to retain.
+     */
+    public void setEnginePoolSize(int enginePoolSize) {
+        this.enginePoolSize = enginePoolSize;
+    }
+
+    /**
+     * Set the time after which an idle engine is discarded from the pool.
+     *
+     * @param engineIdleTimeout the idle timeout in milliseconds, or a
+     * negative value to never discard idle engines.
+     */
+    public void setEngineIdleTimeout(long engineIdleTimeout) {
+        this.engineIdleTimeout = engineIdleTimeout;
+    }
+
+    /**
+     * Set how script output is written to the log: {@code direct} logs each
+     * write as it happens, {@code line} buffers output and logs each
+     * complete line, and {@code evaluation} buffers output and logs it once
+     * the script completes.
+     *
+     * @param scriptOutput the script output mode.
+     */
+    public void setScriptOutput(String scriptOutput) {
+        this.scriptOutput = scriptOutput;
+    }
+
+    /**
+     * Set whether buffered script output is handed to a background thread
+     * to be logged, rather than being logged by the evaluating thread.
+     *
+     * @param asyncScriptOutput {@code true} to log output asynchronously.
+     */
+    public void setAsyncScriptOutput(boolean asyncScriptOutput) {
+        this.asyncScriptOutput = asyncScriptOutput;
+    }
+
+    /**
+     * Set the maximum number of characters of script output to buffer;
+     * output beyond this is logged immediately.
+     *
+     * @param scriptOutputBufferSize the maximum output to buffer.
+     */
+    public void setScriptOutputBufferSize(int scriptOutputBufferSize) {
+        this.scriptOutputBufferSize = scriptOutputBufferSize;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isCacheable() { return false; }
+
+    /** {@inheritDoc} */
+    public boolean isResultValid(final EnforcerRule cached) { return false; }
+
+    /** {@inheritDoc} */
+    public String getCacheId() {
+        return java.util.UUID.randomUUID().toString();
+    }
+
+    /** {@inheritDoc} */
+    public void execute(final EnforcerRuleHelper helper)
+            throws EnforcerRuleException {
+        validateConfig();
+        preflight(helper);
+        adoptWarmup(helper);
+
+        final List<String> failures = 1 < parallelism && 1 < checks.size()
+                ? evaluateConcurrently(helper) : evaluateChecks(helper);
+
+        if (!failures.isEmpty())
+            throw new EnforcerRuleException(toFailureMessage(failures));
+    }
+
+    private void preflight(final EnforcerRuleHelper helper)
+            throws EnforcerRuleException {
+        final Preflight preflight = new Preflight(language, syntaxCheck);
+        for (final ScriptCheck check : checks)
+            preflight.add(check.getScript(), check.getScriptFile());
+        preflight.run(helper);
+    }
+
+    private List<String> evaluateChecks(final EnforcerRuleHelper helper)
+            throws EnforcerRuleException {
+        final Log log = helper.getLog();
+        final List<String> failures = new ArrayList<String>();
+
+        final ScriptEvaluation evaluation =
+                new ScriptEvaluation(helper, getEnginePool(helper));
+        try {
+            evaluation.configureOutput(scriptOutput, asyncScriptOutput,
+                    scriptOutputBufferSize);
+            configureBindings(evaluation, helper);
+
+            for (final ScriptCheck check : checks) {
+                final String failure = evaluateCheck(evaluation, check, log);
+                if (null != failure) failures.add(failure);
+            }
+        } finally {
+            evaluation.release();
+        }
+
+        return failures;
+    }
+
+    /**
+     * Evaluate every check in its own context, at most {@link #parallelism}
+     * at a time, collecting failures in declaration order.
+     */
+    private List<String> evaluateConcurrently(final EnforcerRuleHelper helper)
+            throws EnforcerRuleException {
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(parallelism, checks.size()),
+                new CheckThreadFactory());
+        try {
+            final List<Future<String>> results =
+                    new ArrayList<Future<String>>(checks.size());
+            for (final ScriptCheck check : checks)
+                results.add(executor.submit(new Callable<String>() {
+                    public String call() throws EnforcerRuleException {
+                        return evaluateCheck(helper, check);
+                    }
+                }));
+
+            final List<String> failures = new ArrayList<String>();
+            for (final Future<String> result : results) {
+                final String failure = awaitCheck(result);
+                if (null != failure) failures.add(failure);
+            }
+            return failures;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private String evaluateCheck(final EnforcerRuleHelper helper,
+            final ScriptCheck check) throws EnforcerRuleException {
+        final ScriptEvaluation evaluation =
+                new ScriptEvaluation(helper, getEnginePool(helper));
+        try {
+            evaluation.configureOutput(scriptOutput, asyncScriptOutput,
+                    scriptOutputBufferSize);
+            configureBindings(evaluation, helper);
+            return evaluateCheck(evaluation, check, helper.getLog());
+        } finally {
+            evaluation.release();
+        }
+    }
+
+    /**
+     * Evaluate a single check.
+     *
+     * @return a description of the failure, or {@code null} if the check
+     * passed.
+     */
+    private String evaluateCheck(final ScriptEvaluation evaluation,
+            final ScriptCheck check, final Log log) {
+        try {
+            final Object result =
+                evaluation.eval(check.getScript(), check.getScriptFile());
+
+            if (log.isDebugEnabled())
+                log.debug("Script result: " + result);
+
+            final List<Violation> violations =
+                ScriptEvaluation.check(resultEvaluator, result);
+            return null == violations ? null : toFailure(check, violations);
+        } catch (EnforcerRuleException e) {
+            log.debug("Check failed with exception", e);
+            return check.getMessage() + " (" + toCause(e) + ")";
+        }
+    }
+
+    private String awaitCheck(final Future<String> result)
+            throws EnforcerRuleException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EnforcerRuleException(
+                    "Interrupted while evaluating checks", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof EnforcerRuleException)
+                throw (EnforcerRuleException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new EnforcerRuleException("Check evaluation failed", cause);
+        }
+    }
+
+    private String toFailure(final ScriptCheck check,
+            final List<Violation> violations) {
+        final StringBuilder sb = new StringBuilder(check.getMessage());
+        for (final Violation violation : violations)
+            sb.append("\n   - ").append(violation);
+        return sb.toString();
+    }
+
+    private String toCause(final EnforcerRuleException e) {
+        final Throwable cause = e.getCause();
+        return null == cause
+                ? e.getMessage() : e.getMessage() + ": " + cause.getMessage();
+    }
+
+    private String toFailureMessage(final List<String> failures) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(failures.size())
+            .append(" of ")
+            .append(checks.size())
+            .append(" checks failed:");
+
+        for (final String failure : failures)
+            sb.append("\n - ").append(failure);
+
+        return sb.toString();
+    }
+
+    private ScriptEnginePool getEnginePool(final EnforcerRuleHelper helper) {
+        final ScriptEnginePool pool =
+                ScriptEnginePool.forLanguage(helper, language);
+        pool.configure(enginePoolSize, engineIdleTimeout);
+        return pool;
+    }
+
+    private void configureBindings(final ScriptEvaluation evaluation,
+            final EnforcerRuleHelper helper) throws EnforcerRuleException {
+        for (final Map.Entry<String, Object> entry : scriptBindings.entrySet())
+            evaluation.bind(entry.getKey(), entry.getValue());
+
+        if (!isBlank(ruleHelperKey))
+            evaluation.bind(ruleHelperKey, helper);
+
+        if (!isBlank(lazyHelperKey))
+            evaluation.bind(lazyHelperKey, new MemoizingRuleHelper(helper));
+
+        if (!isBlank(sessionContextKey))
+            evaluation.bind(sessionContextKey,
+                    RuleScope.session(helper).getContext());
+
+        if (!isBlank(dependencyIndexKey))
+            evaluation.bind(dependencyIndexKey,
+                    DependencyIndex.forProject(helper));
+
+        if (!isBlank(projectViewKey))
+            evaluation.bind(projectViewKey, ProjectView.forProject(helper));
+    }
+
+    private void validateConfig() throws IllegalArgumentException {
+        String msg = null;
+
+        if (null == checks || checks.isEmpty())
+            msg = "At least one check must be set";
+        else
+            for (final ScriptCheck check : checks) {
+                final boolean noFile = null == check.getScriptFile();
+                final boolean noScript = isBlank(check.getScript());
+
+                if (noFile && noScript)
+                    msg = "One of script or scriptFile must be set";
+                if (!(noFile || noScript))
+                    msg = "Cannot set both scriptFile and script";
+                if (!noFile && JavaPredicateEngine.LANGUAGE.equals(language))
+                    msg = "Language java requires scripts to name "
+                        + "ScriptPredicate classes, rather than script files";
+            }
+
+        if (!ScriptEvaluation.isOutputMode(scriptOutput))
+            msg = "Unknown scriptOutput: " + scriptOutput;
+        if (1 > parallelism)
+            msg = "parallelism must be at least 1";
+        if (restrictedBindings
+                && !(isBlank(ruleHelperKey) && isBlank(lazyHelperKey)))
+            msg = "Restricted bindings cannot expose the rule helper; "
+                + "use projectViewKey or dependencyIndexKey instead";
+        final String exposed = restrictedBindings
+                ? ScriptEvaluation.findUnrestrictedBinding(scriptBindings)
+                : null;
+        if (null != exposed)
+            msg = "Restricted bindings cannot expose the project or session "
+                + "through scriptBinding " + exposed
+                + "; use projectViewKey instead";
+
+        if (null != msg) throw new IllegalArgumentException(msg);
+    }
+
+    /**
+     * The checks of this rule set, as configured when warmup reads them.
+     */
+    private class WarmupScripts implements ScriptWarmup.Scripts {
+        public Collection<String> getScripts() {
+            final List<String> scripts = new ArrayList<String>();
+            if (null != checks)
+                for (final ScriptCheck check : checks)
+                    if (!isBlank(check.getScript()))
+                        scripts.add(check.getScript());
+            return scripts;
+        }
+
+        public Collection<File> getScriptFiles() {
+            final List<File> files = new ArrayList<File>();
+            if (null != checks)
+                for (final ScriptCheck check : checks)
+                    if (null != check.getScriptFile())
+                        files.add(check.getScriptFile());
+            return files;
+        }
+    }
+
+    private static final class CheckThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable,
+                    "script-check-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Loads script files, decoding each distinct file once per build.
+ *
+ * Decoded sources are cached by path, and reused until the file's
+ * modification time or size change, or it is read with another encoding.
+ * Files are read via NIO into heap buffers, and are always closed before
+ * returning; they are never memory mapped, as a mapping keeps its file
+ * locked on Windows until the buffer is garbage collected, failing any
+ * later attempt to modify or delete it within the same build.
+ *
+ * @author dth
+ */
+final class ScriptSources {
+    /** Decoded sources, keyed by absolute path. */
+    private static final ConcurrentMap<String, Source> SOURCES =
+            new ConcurrentHashMap<String, Source>();
+
+    private ScriptSources() {}
+
+    /**
+     * Get the decoded content of a script file.
+     *
+     * @param file the script file.
+     * @param encoding the encoding of the file.
+     * @return the decoded script source.
+     * @throws UnsupportedEncodingException if the encoding is not supported.
+     * @throws IOException if the file cannot be read.
+     */
+    static String read(final File file, final String encoding)
+            throws IOException {
+        final String path = file.getAbsolutePath();
+        final long lastModified = file.lastModified();
+        final long length = file.length();
+
+        final Source cached = SOURCES.get(path);
+        if (null != cached && cached.matches(lastModified, length, encoding))
+            return cached.text;
+
+        final String text = decode(readBytes(file), toCharset(encoding));
+        SOURCES.put(path, new Source(lastModified, length, encoding, text));
+        return text;
+    }
+
+    /**
+     * Discard all cached sources.
+     */
+    static void clear() { SOURCES.clear(); }
+
+    private static ByteBuffer readBytes(final File file) throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final FileChannel channel = in.getChannel();
+            final long size = channel.size();
+            if (Integer.MAX_VALUE < size)
+                throw new IOException("Script file too large: " + file);
+
+            final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining())
+                if (-1 == channel.read(buffer)) break;
+            buffer.flip();
+            return buffer;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String decode(final ByteBuffer bytes,
+            final Charset charset) throws CharacterCodingException {
+        // Match the lenient behaviour of InputStreamReader
+        final CharsetDecoder decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        return decoder.decode(bytes).toString();
+    }
+
+    private static Charset toCharset(final String encoding)
+            throws UnsupportedEncodingException {
+        try {
+            return Charset.forName(encoding);
+        } catch (IllegalCharsetNameException e) {
+            throw new UnsupportedEncodingException(encoding);
+        } catch (UnsupportedCharsetException e) {
+            throw new UnsupportedEncodingException(encoding);
+        }
+    }
+
+    private static final class Source {
+        final long lastModified;
+        final long length;
+        final String encoding;
+        final String text;
+
+        Source(final long lastModified, final long length,
+                final String encoding, final String text) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.encoding = encoding;
+            this.text = text;
+        }
+
+        boolean matches(final long lastModified, final long length,
+                final String encoding) {
+            return this.lastModified == lastModified
+                    && this.length == length
+                    && this.encoding.equals(encoding);
+        }
+    }
+}
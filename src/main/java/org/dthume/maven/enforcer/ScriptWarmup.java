@@ -0,0 +1,225 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptEngineManager;
+
+/**
+ * Discovers and bootstraps an engine, and compiles scripts with it, on a
+ * background thread started as soon as a rule is configured for warmup.
+ * The enforcer plugin configures every rule before executing the first, so
+ * this work overlaps with the executions of earlier rules; a rule then
+ * hands the warm engine, and the scripts compiled with it, to its pool when
+ * it first executes, if the warmup has finished, and never waits for it.
+ *
+ * Rules configured while a warmup for the same language and class loader is
+ * in progress join it rather than starting another. Only warmups in
+ * progress are tracked; each thread exits once its warmup finishes, and the
+ * result is then referenced only by the rules which joined it, so nothing
+ * is retained beyond the build which configured them.
+ *
+ * Warmup is best effort: failures are ignored, as the same failure will be
+ * reported when the script is evaluated.
+ *
+ * @author dth
+ */
+final class ScriptWarmup implements Runnable {
+    /** Warmups in progress, keyed by language and class loader. */
+    private static final ConcurrentMap<List<Object>, ScriptWarmup> RUNNING =
+            new ConcurrentHashMap<List<Object>, ScriptWarmup>();
+
+    private final List<Object> key;
+    private final String language;
+    private final ClassLoader loader;
+
+    /** The scripts of each rule which joined this warmup. */
+    private final List<Scripts> sources = new CopyOnWriteArrayList<Scripts>();
+
+    /** The scripts compiled, safely published by {@link #done}. */
+    private final List<Precompiled> compiled = new ArrayList<Precompiled>();
+
+    private final AtomicBoolean adopted = new AtomicBoolean();
+
+    /** The warm engine, safely published by {@link #done}. */
+    private ScriptEngine engine = null;
+
+    private volatile boolean done = false;
+
+    private ScriptWarmup(final String language, final ClassLoader loader) {
+        this.key = Arrays.<Object>asList(language, loader);
+        this.language = language;
+        this.loader = loader;
+    }
+
+    /**
+     * Start warming up an engine for a language, and compiling the scripts
+     * of a rule with it, or join the warmup already in progress.
+     *
+     * @param language the scripting language.
+     * @param scripts the scripts of the rule, read once the engine is ready,
+     * by which time the rule is expected to be fully configured.
+     * @return the warmup, or {@code null} if the language is not warmed up.
+     */
+    static ScriptWarmup start(final String language, final Scripts scripts) {
+        if (JavaPredicateEngine.LANGUAGE.equals(language)) return null;
+
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (null == loader) loader = ScriptWarmup.class.getClassLoader();
+
+        final ScriptWarmup warmup = new ScriptWarmup(language, loader);
+        warmup.sources.add(scripts);
+        final ScriptWarmup running =
+                RUNNING.putIfAbsent(warmup.key, warmup);
+        if (null != running) {
+            running.sources.add(scripts);
+            return running;
+        }
+
+        final Thread thread = new Thread(warmup, "script-warmup");
+        thread.setDaemon(true);
+        thread.start();
+        return warmup;
+    }
+
+    /**
+     * Check whether a warmup of a language is in progress.
+     *
+     * @param language the scripting language.
+     * @return {@code true} if a warmup of {@code language} is in progress.
+     */
+    static boolean isRunning(final String language) {
+        for (final List<Object> running : RUNNING.keySet())
+            if (language.equals(running.get(0))) return true;
+        return false;
+    }
+
+    /**
+     * Check whether this warmup is of a language.
+     *
+     * @param language the scripting language.
+     * @return {@code true} if this warmup is of {@code language}.
+     */
+    boolean isFor(final String language) {
+        return this.language.equals(language);
+    }
+
+    /**
+     * Hand the warm engine, and the scripts compiled with it, to a pool,
+     * unless the warmup is still in progress or has already been adopted.
+     *
+     * @param pool the pool to adopt the engine.
+     * @return {@code true} if the pool adopted the engine.
+     */
+    boolean offerTo(final ScriptEnginePool pool) {
+        if (!done || null == engine || !adopted.compareAndSet(false, true))
+            return false;
+
+        return pool.adopt(engine, loader, compiled);
+    }
+
+    /** {@inheritDoc} */
+    public void run() {
+        final Thread current = Thread.currentThread();
+        final ClassLoader previous = current.getContextClassLoader();
+        current.setContextClassLoader(loader);
+        try {
+            final ScriptEngineFactory factory = ScriptEnginePool.findFactory(
+                    new ScriptEngineManager(loader), language);
+            if (null != factory) {
+                engine = factory.getScriptEngine();
+                if (engine instanceof Compilable) precompile();
+            }
+        } catch (Exception e) {
+            // Best effort; failures are reported on execution
+        } finally {
+            current.setContextClassLoader(previous);
+            RUNNING.remove(key, this);
+            done = true;
+        }
+    }
+
+    private void precompile() {
+        final String encoding = Charset.defaultCharset().name();
+        for (final Scripts scripts : sources) {
+            for (final String script : scripts.getScripts())
+                precompile(script, null, null);
+            for (final File file : scripts.getScriptFiles()) {
+                try {
+                    precompile(ScriptSources.read(file, encoding), encoding,
+                            file.getPath());
+                } catch (Exception e) {
+                    // Best effort; failures are reported on execution
+                }
+            }
+        }
+    }
+
+    private void precompile(final String source, final String encoding,
+            final String name) {
+        try {
+            compiled.add(new Precompiled(source, encoding,
+                    ScriptEnginePool.compile(engine, source, name)));
+        } catch (Exception e) {
+            // Best effort; failures are reported on execution
+        }
+    }
+
+    /**
+     * The scripts a rule would have warmed up.
+     */
+    interface Scripts {
+        /** @return the inline scripts of the rule, none blank. */
+        Collection<String> getScripts();
+
+        /** @return the script files of the rule. */
+        Collection<File> getScriptFiles();
+    }
+
+    /**
+     * A script compiled by a warmup.
+     */
+    static final class Precompiled {
+        final String source;
+        final String encoding;
+        final CompiledScript script;
+
+        Precompiled(final String source, final String encoding,
+                final CompiledScript script) {
+            this.source = source;
+            this.encoding = encoding;
+            this.script = script;
+        }
+    }
+}
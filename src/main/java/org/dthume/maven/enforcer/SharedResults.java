@@ -0,0 +1,104 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleException;
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+
+/**
+ * The results of rules scoped above module level, memoized for the rest of
+ * the Maven session so that each distinct set of inputs is evaluated once.
+ *
+ * Concurrent requests for the same key, as in parallel builds, wait for a
+ * single evaluation. Only results are shared: an evaluation which throws is
+ * forgotten, so that later modules evaluate the rule again.
+ *
+ * @author dth
+ */
+final class SharedResults {
+    /** The session scope attribute holding the shared results. */
+    private static final String ATTRIBUTE = SharedResults.class.getName();
+
+    private final ConcurrentMap<String, FutureTask<List<Violation>>> results =
+            new ConcurrentHashMap<String, FutureTask<List<Violation>>>();
+
+    /**
+     * Get the shared results of the current Maven session.
+     *
+     * @param helper the helper to look up the session with.
+     * @return the shared results, never {@code null}.
+     */
+    static SharedResults forSession(final EnforcerRuleHelper helper) {
+        final RuleScope scope = RuleScope.session(helper);
+        final Object results = scope.getAttribute(ATTRIBUTE);
+        return null != results ? (SharedResults) results
+                : (SharedResults) scope.putAttributeIfAbsent(ATTRIBUTE,
+                        new SharedResults());
+    }
+
+    /**
+     * Get the result for a key, evaluating it if no result is available.
+     *
+     * @param key the key identifying the inputs of the evaluation.
+     * @param evaluation the evaluation to run if necessary.
+     * @return the result of the evaluation, which may be {@code null}.
+     * @throws EnforcerRuleException if the evaluation fails.
+     */
+    List<Violation> get(final String key,
+            final Callable<List<Violation>> evaluation)
+            throws EnforcerRuleException {
+        FutureTask<List<Violation>> result = results.get(key);
+        if (null == result) {
+            final FutureTask<List<Violation>> task =
+                    new FutureTask<List<Violation>>(evaluation);
+            result = results.putIfAbsent(key, task);
+            if (null == result) {
+                result = task;
+                task.run();
+            }
+        }
+
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EnforcerRuleException(
+                    "Interrupted while awaiting shared rule result", e);
+        } catch (ExecutionException e) {
+            results.remove(key, result);
+
+            final Throwable cause = e.getCause();
+            if (cause instanceof EnforcerRuleException)
+                throw (EnforcerRuleException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new EnforcerRuleException("Rule evaluation failed", cause);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import java.util.List;
+
+/**
+ * A {@link ScriptResultEvaluator} which can extract individual
+ * {@link Violation}s from a script result, so that all of them can be
+ * reported at once.
+ *
+ * Rules use {@link #getViolations(Object)} in preference to
+ * {@link #isValidResult(Object)} when given an evaluator implementing this
+ * interface; the two should agree on whether a result is valid.
+ *
+ * @author dth
+ */
+public interface StructuredResultEvaluator extends ScriptResultEvaluator {
+    /**
+     * Extract the violations described by a result.
+     *
+     * @param result the script result.
+     * @return the violations, which are empty if the result is valid, or
+     * {@code null} if the result does not describe violations, in which
+     * case {@link #isValidResult(Object)} decides its validity.
+     */
+    List<Violation> getViolations(Object result);
+}
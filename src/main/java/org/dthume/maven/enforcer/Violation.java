@@ -0,0 +1,82 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+/**
+ * A single problem reported by a script, as extracted from its result by a
+ * {@link StructuredResultEvaluator}. Instances are immutable.
+ *
+ * @author dth
+ */
+public final class Violation {
+    private final String code;
+    private final String message;
+    private final String location;
+
+    /**
+     * Create a violation.
+     *
+     * @param code a code identifying the kind of violation, or {@code null}.
+     * @param message a description of the violation.
+     * @param location where the violation occurs, such as a file or
+     * artifact, or {@code null}.
+     */
+    public Violation(final String code, final String message,
+            final String location) {
+        this.code = code;
+        this.message = message;
+        this.location = location;
+    }
+
+    /**
+     * Get the code identifying the kind of violation.
+     *
+     * @return the code, or {@code null}.
+     */
+    public String getCode() { return code; }
+
+    /**
+     * Get the description of the violation.
+     *
+     * @return the message.
+     */
+    public String getMessage() { return message; }
+
+    /**
+     * Get where the violation occurs.
+     *
+     * @return the location, or {@code null}.
+     */
+    public String getLocation() { return location; }
+
+    /**
+     * Format this violation for reporting, as
+     * {@code [code] message (location)}.
+     *
+     * @return the formatted violation.
+     */
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        if (null != code) sb.append('[').append(code).append("] ");
+        sb.append(message);
+        if (null != location) sb.append(" (").append(location).append(')');
+        return sb.toString();
+    }
+}
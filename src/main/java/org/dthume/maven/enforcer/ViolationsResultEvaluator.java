@@ -0,0 +1,139 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link StructuredResultEvaluator} for scripts which return a
+ * collection of violation records.
+ *
+ * <ul>
+ * <li>{@link Iterable}s and arrays are collections of records, as are
+ * native arrays of engines such as Nashorn, which are exposed as maps with
+ * an {@code isArray()} method, and whose values are read without
+ * converting them</li>
+ * <li>A map with a {@code violations} key holds its records under that
+ * key, in any of the above forms; {@code null} is no records</li>
+ * <li>A map with a {@code message} key is a single record; any other map
+ * is not a collection of records</li>
+ * <li>Each record may be a {@link Violation}, a map with {@code message}
+ * and optionally {@code code} and {@code location} keys, or any other
+ * value, which is used as the message</li>
+ * <li>All other results are evaluated by
+ * {@link DefaultScriptResultEvaluator}</li>
+ * </ul>
+ *
+ * A result is valid if it describes no violations.
+ *
+ * @author dth
+ */
+public class ViolationsResultEvaluator implements StructuredResultEvaluator {
+    private static final String CODE = "code";
+    private static final String MESSAGE = "message";
+    private static final String LOCATION = "location";
+    private static final String VIOLATIONS = "violations";
+
+    private final ScriptResultEvaluator fallback =
+            new DefaultScriptResultEvaluator();
+
+    /** {@inheritDoc} */
+    public boolean isValidResult(final Object result) {
+        final List<Violation> violations = getViolations(result);
+        return null == violations
+                ? fallback.isValidResult(result) : violations.isEmpty();
+    }
+
+    /** {@inheritDoc} */
+    public List<Violation> getViolations(final Object result) {
+        if (result instanceof Map<?, ?>) {
+            final Map<?, ?> map = (Map<?, ?>) result;
+            if (map.containsKey(MESSAGE))
+                return Collections.singletonList(toViolation(map));
+            if (map.containsKey(VIOLATIONS)) {
+                final Object records = map.get(VIOLATIONS);
+                final List<Violation> violations = toRecords(records);
+                return null != violations ? violations
+                        : null == records ? Collections.<Violation>emptyList()
+                        : Collections.singletonList(toViolation(records));
+            }
+        }
+        return toRecords(result);
+    }
+
+    private List<Violation> toRecords(final Object result) {
+        if (result instanceof Map<?, ?> && isScriptArray(result))
+            return toViolations(((Map<?, ?>) result).values());
+        if (result instanceof Iterable<?>)
+            return toViolations((Iterable<?>) result);
+        if (null != result && result.getClass().isArray())
+            return toViolations(result);
+        return null;
+    }
+
+    /**
+     * Determine whether a map is a script engine's native array, such as a
+     * Nashorn {@code ScriptObjectMirror}, without depending on the engine.
+     */
+    private static boolean isScriptArray(final Object map) {
+        try {
+            final Method isArray = map.getClass().getMethod("isArray");
+            return Boolean.TRUE.equals(isArray.invoke(map));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private List<Violation> toViolations(final Iterable<?> records) {
+        final List<Violation> violations = new ArrayList<Violation>();
+        for (final Object record : records)
+            violations.add(toViolation(record));
+        return violations;
+    }
+
+    private List<Violation> toViolations(final Object array) {
+        final int length = Array.getLength(array);
+        final List<Violation> violations = new ArrayList<Violation>(length);
+        for (int ii = 0; ii < length; ii++)
+            violations.add(toViolation(Array.get(array, ii)));
+        return violations;
+    }
+
+    private Violation toViolation(final Object record) {
+        if (record instanceof Violation)
+            return (Violation) record;
+        if (record instanceof Map<?, ?>) {
+            final Map<?, ?> map = (Map<?, ?>) record;
+            return new Violation(toStringOrNull(map.get(CODE)),
+                    String.valueOf(map.get(MESSAGE)),
+                    toStringOrNull(map.get(LOCATION)));
+        }
+        return new Violation(null, String.valueOf(record), null);
+    }
+
+    private String toStringOrNull(final Object value) {
+        return null == value ? null : value.toString();
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.dthume.maven.util.LogWriter.LogLevel.INFO;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+public class BufferedLogWriterTest {
+
+    private final List<String> messages =
+            Collections.synchronizedList(new ArrayList<String>());
+
+    private final Log log = new SystemStreamLog() {
+        public void info(CharSequence content) {
+            messages.add(content.toString());
+        }
+    };
+
+    @Test
+    public void lineModeShouldLogCompleteLines() throws Exception {
+        final BufferedLogWriter writer =
+                new BufferedLogWriter(log, INFO, true, 1024, null);
+        writer.write("one\ntw");
+        writer.write("o\r\nthr");
+        writer.flush();
+        assertEquals(Arrays.asList("one", "two"), messages);
+
+        writer.close();
+        assertEquals(Arrays.asList("one", "two", "thr"), messages);
+    }
+
+    @Test
+    public void evaluationModeShouldLogOnClose() throws Exception {
+        final BufferedLogWriter writer =
+                new BufferedLogWriter(log, INFO, false, 1024, null);
+        writer.write("one\n");
+        writer.write("two\n");
+        assertTrue(messages.isEmpty());
+
+        writer.close();
+        assertEquals(Arrays.asList("one\ntwo"), messages);
+    }
+
+    @Test
+    public void bufferShouldBeBounded() throws Exception {
+        final BufferedLogWriter writer =
+                new BufferedLogWriter(log, INFO, false, 4, null);
+        writer.write("abcdefghij");
+        assertEquals(Arrays.asList("abcd", "efgh"), messages);
+
+        writer.close();
+        assertEquals(Arrays.asList("abcd", "efgh", "ij"), messages);
+    }
+
+    @Test
+    public void asyncOutputShouldBeLoggedByClose() throws Exception {
+        final BufferedLogWriter writer = new BufferedLogWriter(log, INFO,
+                true, 1024, new BufferedLogWriter.Dispatcher());
+        for (int ii = 0; ii < 100; ii++)
+            writer.write("line " + ii + "\n");
+        writer.close();
+
+        assertEquals(100, messages.size());
+        assertEquals("line 0", messages.get(0));
+        assertEquals("line 99", messages.get(99));
+    }
+
+    @Test
+    public void flushShouldWaitForAsyncOutput() throws Exception {
+        final BufferedLogWriter writer = new BufferedLogWriter(log, INFO,
+                true, 1024, new BufferedLogWriter.Dispatcher());
+        for (int ii = 0; ii < 100; ii++)
+            writer.write("line " + ii + "\n");
+        writer.write("partial");
+        writer.flush();
+
+        assertEquals(100, messages.size());
+        assertEquals("line 99", messages.get(99));
+    }
+
+    @Test
+    public void idleLoggingThreadShouldExit() throws Exception {
+        final BufferedLogWriter writer = new BufferedLogWriter(log, INFO,
+                true, 1024, new BufferedLogWriter.Dispatcher());
+        writer.write("line\n");
+        writer.close();
+
+        for (int ii = 0; ii < 100 && isLoggingThreadAlive(); ii++)
+            Thread.sleep(BufferedLogWriter.Dispatcher.LINGER);
+        assertFalse(isLoggingThreadAlive());
+    }
+
+    private boolean isLoggingThreadAlive() {
+        final Thread[] threads = new Thread[Thread.activeCount() + 16];
+        final int count = Thread.enumerate(threads);
+        for (int ii = 0; ii < count; ii++)
+            if ("script-output".equals(threads[ii].getName())) return true;
+        return false;
+    }
+
+    @Test
+    public void scriptOutputShouldBeAggregated() throws Exception {
+        final ScriptRuleSet rules = new ScriptRuleSet();
+        final ScriptCheck check = new ScriptCheck();
+        check.setScript("for (var i = 0; i < 3; i++) print('line ' + i);"
+                + " true;");
+        rules.setChecks(Arrays.asList(check));
+        rules.setScriptOutput("evaluation");
+
+        final EnforcerRuleHelper helper = mock(EnforcerRuleHelper.class);
+        when(helper.getLog()).thenReturn(log);
+        rules.execute(helper);
+
+        assertEquals(Arrays.asList("line 0\nline 1\nline 2"), messages);
+    }
+}
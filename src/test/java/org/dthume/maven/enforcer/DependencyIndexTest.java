@@ -0,0 +1,133 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.plugin.logging.Log;
+import org.junit.Test;
+
+public class DependencyIndexTest {
+
+    private Artifact mockArtifact(String artifactId, String scope,
+            String...trail) {
+        final Artifact artifact = mock(Artifact.class);
+        when(artifact.getGroupId()).thenReturn("group");
+        when(artifact.getArtifactId()).thenReturn(artifactId);
+        when(artifact.getScope()).thenReturn(scope);
+
+        final List<String> ids = new ArrayList<String>();
+        ids.add("group:project:jar:1.0");
+        for (final String id : trail)
+            ids.add("group:" + id + ":jar:1.0");
+        ids.add("group:" + artifactId + ":jar:1.0");
+        when(artifact.getDependencyTrail()).thenReturn(ids);
+        return artifact;
+    }
+
+    private DependencyIndex newIndex() {
+        return new DependencyIndex("group:project", Arrays.asList(
+                mockArtifact("a", "compile"),
+                mockArtifact("b", "compile", "a"),
+                mockArtifact("c", "test", "a", "b"),
+                mockArtifact("d", "test")));
+    }
+
+    @Test
+    public void artifactsShouldBeFoundByKey() {
+        final DependencyIndex index = newIndex();
+        assertEquals(4, index.size());
+        assertTrue(index.contains("group", "b"));
+        assertFalse(index.contains("group", "z"));
+        assertEquals("c", index.get("group:c").getArtifactId());
+        assertNull(index.get("group", "z"));
+    }
+
+    @Test
+    public void artifactsShouldBeFoundByGroupAndScope() {
+        final DependencyIndex index = newIndex();
+        assertEquals(4, index.getByGroupId("group").size());
+        assertEquals(2, index.getByScope("test").size());
+        assertTrue(index.getByScope("runtime").isEmpty());
+    }
+
+    @Test
+    public void pathsShouldFollowDependencyTrails() {
+        final DependencyIndex index = newIndex();
+        assertEquals(Arrays.asList("group:project", "group:a", "group:b",
+                "group:c"), index.getPath("group:c"));
+        assertTrue(index.isTransitive("group:c"));
+        assertFalse(index.isTransitive("group:a"));
+    }
+
+    @Test
+    public void edgesShouldBeIndexedInBothDirections() {
+        final DependencyIndex index = newIndex();
+        assertEquals(new HashSet<String>(Arrays.asList("group:a", "group:d")),
+                index.getDependencies("group:project"));
+        assertEquals(new HashSet<String>(Arrays.asList("group:a")),
+                index.getDependents("group:b"));
+        assertEquals(new HashSet<String>(Arrays.asList("group:b", "group:c")),
+                index.getTransitiveDependencies("group:a"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void indexShouldBeImmutable() {
+        newIndex().getByScope("test").clear();
+    }
+
+    private EnforcerRuleHelper mockProjectHelper() throws Exception {
+        final EnforcerRuleHelper helper = mock(EnforcerRuleHelper.class);
+        when(helper.getLog()).thenReturn(mock(Log.class));
+        when(helper.evaluate("${project}")).thenReturn(new Object());
+        when(helper.evaluate("${project.artifacts}")).thenReturn(
+                new HashSet<Artifact>(
+                        Arrays.asList(mockArtifact("a", "compile"))));
+        return helper;
+    }
+
+    @Test
+    public void indexShouldBeBuiltOncePerProject() throws Exception {
+        final EnforcerRuleHelper helper = mockProjectHelper();
+
+        final DependencyIndex index = DependencyIndex.forProject(helper);
+        assertEquals(1, index.size());
+        assertSame(index, DependencyIndex.forProject(helper));
+    }
+
+    @Test
+    public void indexShouldBeBoundForScripts() throws Exception {
+        final EnforcerRuleHelper helper = mockProjectHelper();
+
+        final ScriptRule rule = new ScriptRule();
+        rule.setLanguage("javascript");
+        rule.setDependencyIndexKey("dependencies");
+        rule.setScript("dependencies.contains('group', 'a');");
+        rule.execute(helper);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.junit.Assert.*;
+
+import javax.script.ScriptEngineFactory;
+
+import org.junit.Test;
+
+public class JavaPredicateEngineTest {
+
+    private final ScriptEngineFactory factory =
+            new JavaPredicateEngine().getFactory();
+
+    @Test
+    public void methodCallSyntaxShouldBeJava() {
+        assertEquals("obj.m(a, b)",
+                factory.getMethodCallSyntax("obj", "m", "a", "b"));
+        assertEquals("obj.m()", factory.getMethodCallSyntax("obj", "m"));
+    }
+
+    @Test
+    public void outputStatementShouldBeEscaped() {
+        assertEquals("System.out.print(\"say \\\"hi\\\"\")",
+                factory.getOutputStatement("say \"hi\""));
+    }
+
+    @Test
+    public void programShouldTerminateStatements() {
+        assertEquals("a();\nb();\n", factory.getProgram("a()", "b()"));
+    }
+
+    @Test
+    public void enginesShouldBeDeclaredThreadSafe() {
+        assertEquals("MULTITHREADED", factory.getParameter("THREADING"));
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MemoizingRuleHelperTest {
+
+    /** The invocations made on the underlying helper. */
+    private final List<String> calls = new ArrayList<String>();
+
+    private EnforcerRuleHelper helper;
+
+    @Before
+    public void setUp() {
+        helper = (EnforcerRuleHelper) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { EnforcerRuleHelper.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method,
+                            Object[] args) {
+                        if ("getLog".equals(method.getName()))
+                            return new SystemStreamLog();
+
+                        calls.add(method.getName() + ":" + args[0]);
+                        return "${missing}".equals(args[0])
+                                ? null : "value of " + args[0];
+                    }
+                });
+    }
+
+    @Test
+    public void expressionsShouldBeEvaluatedOnce() throws Exception {
+        final MemoizingRuleHelper lazy = new MemoizingRuleHelper(helper);
+
+        assertEquals("value of ${a}", lazy.evaluate("${a}"));
+        assertEquals("value of ${a}", lazy.property("a"));
+        assertEquals(1, calls.size());
+    }
+
+    @Test
+    public void nullValuesShouldBeMemoized() throws Exception {
+        final MemoizingRuleHelper lazy = new MemoizingRuleHelper(helper);
+
+        assertNull(lazy.evaluate("${missing}"));
+        assertNull(lazy.evaluate("${missing}"));
+        assertEquals(1, calls.size());
+    }
+
+    @Test
+    public void nothingShouldBeResolvedUntilAccessed() throws Exception {
+        new MemoizingRuleHelper(helper).getLog();
+        assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    public void componentsShouldBeLookedUpOnce() throws Exception {
+        final MemoizingRuleHelper lazy = new MemoizingRuleHelper(helper);
+
+        lazy.getComponent("role");
+        lazy.getComponent("role");
+        lazy.getComponent("role", "hint");
+        assertEquals(2, calls.size());
+    }
+
+    @Test
+    public void facadeShouldBeBoundForScripts() throws Exception {
+        final ScriptRule rule = new ScriptRule();
+        rule.setLanguage("javascript");
+        rule.setLazyHelperKey("lazy");
+        rule.setScript("lazy.property('project.version') =="
+                + " lazy.evaluate('${project.version}');");
+        rule.execute(helper);
+
+        // The rule itself may evaluate other expressions, such as ${session}
+        int projectVersionCalls = 0;
+        for (final String call : calls)
+            if (call.contains("project.version")) projectVersionCalls++;
+        assertEquals(1, projectVersionCalls);
+    }
+}
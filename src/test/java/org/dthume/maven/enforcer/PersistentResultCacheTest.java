@@ -0,0 +1,100 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.apache.commons.codec.digest.DigestUtils.md5Hex;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PersistentResultCacheTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("result-cache", "");
+        directory.delete();
+    }
+
+    private PersistentResultCache newCache(int maxEntries) throws Exception {
+        // Each test uses a fresh directory, and hence a fresh cache instance
+        return PersistentResultCache.forDirectory(directory, maxEntries);
+    }
+
+    private File indexFile() {
+        return new File(directory, PersistentResultCache.INDEX_FILE_NAME);
+    }
+
+    @Test
+    public void unrecordedKeyShouldNotBeFound() throws Exception {
+        assertFalse(newCache(10).contains(md5Hex("a")));
+    }
+
+    @Test
+    public void recordedKeyShouldBeFound() throws Exception {
+        final PersistentResultCache cache = newCache(10);
+        cache.record(md5Hex("a"));
+
+        assertTrue(cache.contains(md5Hex("a")));
+        assertEquals(24, indexFile().length());
+    }
+
+    @Test
+    public void oldestKeysShouldBeEvicted() throws Exception {
+        final PersistentResultCache cache = newCache(2);
+        cache.record(md5Hex("a"));
+        cache.record(md5Hex("b"));
+        cache.record(md5Hex("c"));
+
+        assertFalse(cache.contains(md5Hex("a")));
+        assertTrue(cache.contains(md5Hex("b")));
+        assertTrue(cache.contains(md5Hex("c")));
+        assertEquals(48, indexFile().length());
+    }
+
+    @Test
+    public void rerecordedKeysShouldBeCompacted() throws Exception {
+        final PersistentResultCache cache = newCache(2);
+        for (int ii = 0; ii < 10; ii++)
+            cache.record(md5Hex("a"));
+
+        assertTrue(cache.contains(md5Hex("a")));
+        assertTrue(indexFile().length() < 4 * 24);
+    }
+
+    @Test
+    public void partialRecordsShouldBeIgnored() throws Exception {
+        directory.mkdirs();
+        final RandomAccessFile file = new RandomAccessFile(indexFile(), "rw");
+        file.write(new byte[] { 1, 2, 3 });
+        file.close();
+
+        final PersistentResultCache cache = newCache(10);
+        cache.record(md5Hex("a"));
+
+        assertTrue(cache.contains(md5Hex("a")));
+        assertEquals(24, indexFile().length());
+    }
+}
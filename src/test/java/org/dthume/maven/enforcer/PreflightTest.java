@@ -0,0 +1,126 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleException;
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.plugin.logging.Log;
+import org.junit.Test;
+
+public class PreflightTest {
+
+    private EnforcerRuleHelper mockHelper() {
+        final EnforcerRuleHelper helper = mock(EnforcerRuleHelper.class);
+        when(helper.getLog()).thenReturn(mock(Log.class));
+        return helper;
+    }
+
+    @Test
+    public void unknownLanguageShouldListAvailableLanguages()
+            throws Exception {
+        final ScriptRule rule = new ScriptRule();
+        rule.setLanguage("no-such-language");
+        rule.setScript("true;");
+        try {
+            rule.execute(mockHelper());
+            fail("Expected preflight to fail");
+        } catch (EnforcerRuleException e) {
+            assertTrue(e.getMessage().contains("no-such-language"));
+            assertTrue(e.getMessage().contains("javascript"));
+        }
+    }
+
+    @Test
+    public void missingScriptFileShouldFail() throws Exception {
+        final File missing = new File("no-such-script.js");
+        try {
+            new Preflight("javascript", false)
+                .add(null, missing)
+                .run(mockHelper());
+            fail("Expected preflight to fail");
+        } catch (EnforcerRuleException e) {
+            assertTrue(e.getMessage().startsWith("Script file not found"));
+        }
+    }
+
+    @Test
+    public void syntaxErrorShouldFailIfChecked() throws Exception {
+        final ScriptRule rule = new ScriptRule();
+        rule.setScript("true;");
+        rule.setValidatorScript("this is not valid javascript");
+        rule.setSyntaxCheck(true);
+        try {
+            rule.execute(mockHelper());
+            fail("Expected preflight to fail");
+        } catch (EnforcerRuleException e) {
+            assertTrue(e.getMessage().startsWith("Syntax error"));
+        }
+    }
+
+    @Test
+    public void syntaxErrorShouldNotFailIfUnchecked() throws Exception {
+        new Preflight("javascript", false)
+            .add("this is not valid javascript", null)
+            .run(mockHelper());
+    }
+
+    @Test
+    public void functionsShouldRequireInvocableEngine() throws Exception {
+        try {
+            new Preflight(JavaPredicateEngine.LANGUAGE, false)
+                .requireInvocable(true)
+                .add("java.lang.Boolean", null)
+                .run(mockHelper());
+            fail("Expected preflight to fail");
+        } catch (EnforcerRuleException e) {
+            assertTrue(e.getMessage().contains("cannot invoke functions"));
+        }
+    }
+
+    @Test
+    public void invocableEngineShouldPassFunctionCheck() throws Exception {
+        new Preflight("javascript", false)
+            .requireInvocable(true)
+            .add("function check() { return true; }", null)
+            .run(mockHelper());
+    }
+
+    @Test
+    public void passedChecksShouldNotBeRepeated() throws Exception {
+        final EnforcerRuleHelper helper = mockHelper();
+        final ScriptEnginePool pool =
+                ScriptEnginePool.forLanguage(helper, "javascript");
+        final Preflight preflight = new Preflight("javascript", true)
+            .add("// " + System.nanoTime() + "\ntrue;", null);
+
+        pool.clear();
+        preflight.run(helper);
+        assertEquals(1, pool.compiledCount());
+
+        pool.clear();
+        preflight.run(helper);
+        assertEquals(0, pool.compiledCount());
+    }
+}
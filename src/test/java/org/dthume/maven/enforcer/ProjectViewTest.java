@@ -0,0 +1,158 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.junit.Test;
+
+public class ProjectViewTest {
+
+    @SuppressWarnings("unchecked")
+    private MavenProject newProject() {
+        final Model model = new Model();
+        model.setGroupId("group");
+        model.setArtifactId("project");
+        model.setVersion("1.0");
+        model.getProperties().setProperty("java.version", "1.5");
+
+        final Dependency dependency = new Dependency();
+        dependency.setGroupId("group");
+        dependency.setArtifactId("a");
+        dependency.setVersion("2.0");
+        dependency.setScope("test");
+        model.getDependencies().add(dependency);
+
+        final MavenProject project = new MavenProject(model);
+        final Plugin plugin = new Plugin();
+        plugin.setArtifactId("maven-compiler-plugin");
+        project.getBuildPlugins().add(plugin);
+        return project;
+    }
+
+    private EnforcerRuleHelper mockProjectHelper() throws Exception {
+        final EnforcerRuleHelper helper = mock(EnforcerRuleHelper.class);
+        when(helper.getLog()).thenReturn(mock(Log.class));
+        when(helper.evaluate("${project}")).thenReturn(newProject());
+        return helper;
+    }
+
+    @Test
+    public void viewShouldExposeProjectModel() {
+        final ProjectView view = new ProjectView(newProject());
+        assertEquals("group:project", view.getKey());
+        assertEquals("1.5", view.getProperty("java.version"));
+        assertEquals("group:a", view.getDependencies().get(0).getKey());
+        assertEquals("test", view.getDependencies().get(0).getScope());
+        assertEquals("org.apache.maven.plugins:maven-compiler-plugin",
+                view.getPlugins().get(0).getKey());
+    }
+
+    @Test
+    public void viewShouldReflectModelWithoutCopying() {
+        final MavenProject project = newProject();
+        final ProjectView view = new ProjectView(project);
+        project.getProperties().setProperty("late", "value");
+        assertEquals("value", view.getProperties().get("late"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void dependenciesShouldBeReadOnly() {
+        new ProjectView(newProject()).getDependencies().clear();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void propertiesShouldBeReadOnly() {
+        new ProjectView(newProject()).getProperties().put("a", "b");
+    }
+
+    @Test
+    public void viewShouldBeBoundForScripts() throws Exception {
+        final ScriptRule rule = new ScriptRule();
+        rule.setLanguage("javascript");
+        rule.setProjectViewKey("project");
+        rule.setRestrictedBindings(true);
+        rule.setScript("project.getDependencies().get(0).getKey() == 'group:a'"
+                + " && project.getProperty('java.version') == '1.5';");
+        rule.execute(mockProjectHelper());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void restrictedBindingsShouldRejectRuleHelper() throws Exception {
+        final ScriptRule rule = new ScriptRule();
+        rule.setLanguage("javascript");
+        rule.setRestrictedBindings(true);
+        rule.setRuleHelperKey("helper");
+        rule.setScript("true;");
+        rule.execute(mockProjectHelper());
+    }
+
+    @Test
+    public void restrictedBindingsShouldRejectProjectBinding()
+            throws Exception {
+        final Map<String, Object> bindings = new HashMap<String, Object>();
+        bindings.put("pom", newProject());
+
+        final ScriptRule rule = new ScriptRule();
+        rule.setLanguage("javascript");
+        rule.setRestrictedBindings(true);
+        rule.setScriptBindings(bindings);
+        rule.setScript("true;");
+        try {
+            rule.execute(mockProjectHelper());
+            fail("Expected restricted bindings to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("scriptBinding pom"));
+        }
+    }
+
+    @Test
+    public void viewShouldNotRetainProject() throws Exception {
+        MavenProject project = newProject();
+        final ProjectView view = new ProjectView(project);
+        final WeakReference<Object> reference =
+                new WeakReference<Object>(project);
+        assertEquals("group:project", view.getKey());
+
+        project = null;
+        for (int ii = 0; null != reference.get() && ii < 100; ii++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(reference.get());
+        try {
+            view.getKey();
+            fail("Expected a collected project to be unavailable");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RuleMetricsTest {
+
+    private RuleMetrics metrics;
+
+    @Before
+    public void setUp() {
+        metrics = new RuleMetrics();
+
+        final ScriptMetrics script = new ScriptMetrics();
+        script.addAcquire(1000000L);
+        script.addCompile(2000000L);
+        script.addEval(3000000L);
+        script.addCpu(2500000L);
+        add(new RuleMetrics.Record("module-a", "check.js", "execute", "pass",
+                "miss", script, 7000000L));
+        add(new RuleMetrics.Record("module \"b\"", "inline:1234abcd",
+                "execute", "skipped", "hit", null, 500000L));
+    }
+
+    private void add(RuleMetrics.Record record) {
+        final EnforcerRuleHelper helper = mock(EnforcerRuleHelper.class);
+        when(helper.getLog()).thenReturn(mock(Log.class));
+        metrics.record(record, null, helper);
+    }
+
+    private MavenProject newProject(String artifactId) {
+        final Model model = new Model();
+        model.setGroupId("group");
+        model.setArtifactId(artifactId);
+        return new MavenProject(model);
+    }
+
+    private EnforcerRuleHelper mockHelper(MavenSession session,
+            MavenProject project, final List<CharSequence> lines)
+            throws Exception {
+        final EnforcerRuleHelper helper = mock(EnforcerRuleHelper.class);
+        when(helper.getLog()).thenReturn(new SystemStreamLog() {
+            public void info(CharSequence content) { lines.add(content); }
+        });
+        when(helper.evaluate("${session}")).thenReturn(session);
+        when(helper.evaluate("${project}")).thenReturn(project);
+        return helper;
+    }
+
+    private RuleMetrics.Record newRecord(String module) {
+        return new RuleMetrics.Record(module, "check.js", "execute", "pass",
+                "off", null, 1000000L);
+    }
+
+    private List<String> readLines(File file) throws Exception {
+        final BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            final List<String> lines = new ArrayList<String>();
+            String line;
+            while (null != (line = reader.readLine()))
+                lines.add(line);
+            return lines;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private File newReportFile(String name) throws Exception {
+        final File dir = File.createTempFile("metrics", "");
+        dir.delete();
+        return new File(new File(dir, "target"), name);
+    }
+
+    @Test
+    public void csvReportShouldHaveOneLinePerRecord() throws Exception {
+        final File file = newReportFile("metrics.csv");
+        metrics.writeReport(file);
+
+        final List<String> lines = readLines(file);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).startsWith("module,rule,phase,outcome"));
+        assertEquals("\"module-a\",\"check.js\",execute,pass,miss,0,1,"
+                + "1.000,2.000,3.000,2.500,7.000", lines.get(1));
+        assertTrue(lines.get(2).startsWith("\"module \"\"b\"\"\""));
+    }
+
+    @Test
+    public void jsonReportShouldEscapeValues() throws Exception {
+        final File file = newReportFile("metrics.json");
+        metrics.writeReport(file);
+
+        final List<String> lines = readLines(file);
+        assertEquals("[", lines.get(0));
+        assertTrue(lines.get(1).contains("\"evalMillis\": 3.000"));
+        assertTrue(lines.get(2).contains("\"module \\\"b\\\"\""));
+        assertTrue(lines.get(2).contains("\"outcome\": \"skipped\""));
+        assertEquals("]", lines.get(3));
+    }
+
+    @Test
+    public void summaryShouldListEveryRecord() {
+        final List<CharSequence> lines = new ArrayList<CharSequence>();
+        metrics.logSummary(new SystemStreamLog() {
+            public void info(CharSequence content) { lines.add(content); }
+        });
+
+        assertEquals(4, lines.size());
+        assertTrue(lines.get(0).toString().contains("2 executions"));
+        assertTrue(lines.get(2).toString().contains("check.js"));
+    }
+
+    @Test
+    public void summaryShouldFollowLastRuleOfLastModule() throws Exception {
+        final MavenProject a = newProject("a");
+        final MavenProject b = newProject("b");
+        final MavenSession session = mock(MavenSession.class);
+        when(session.getSortedProjects()).thenReturn(Arrays.asList(a, b));
+        final List<CharSequence> lines = new ArrayList<CharSequence>();
+        final File file = newReportFile("metrics.csv");
+        final EnforcerRuleHelper helperA = mockHelper(session, a, lines);
+        final EnforcerRuleHelper helperB = mockHelper(session, b, lines);
+        final RuleMetrics sessionMetrics = RuleMetrics.forSession(helperA);
+
+        // Ends any execution left pending on this thread by other tests
+        RuleMetrics.finished(null, false);
+
+        RuleMetrics.configured();
+        sessionMetrics.record(newRecord("a"), file, helperA);
+        RuleMetrics.finished(helperA, true);
+        assertTrue(lines.isEmpty());
+
+        RuleMetrics.configured();
+        RuleMetrics.configured();
+        sessionMetrics.record(newRecord("b"), file, helperB);
+        RuleMetrics.finished(helperB, true);
+        assertTrue(lines.isEmpty());
+        assertFalse(file.exists());
+
+        sessionMetrics.record(newRecord("b"), file, helperB);
+        RuleMetrics.finished(helperB, true);
+        assertTrue(lines.get(0).toString().contains("3 executions"));
+        assertEquals(4, readLines(file).size());
+    }
+
+    @Test
+    public void lateExecutionShouldNotBeSummarisedAgain() throws Exception {
+        final MavenProject a = newProject("a");
+        final MavenProject b = newProject("b");
+        final MavenSession session = mock(MavenSession.class);
+        when(session.getSortedProjects()).thenReturn(Arrays.asList(a, b));
+        final List<CharSequence> lines = new ArrayList<CharSequence>();
+        final File file = newReportFile("metrics.csv");
+        final EnforcerRuleHelper helperA = mockHelper(session, a, lines);
+        final EnforcerRuleHelper helperB = mockHelper(session, b, lines);
+        final RuleMetrics sessionMetrics = RuleMetrics.forSession(helperB);
+
+        RuleMetrics.finished(null, false);
+        RuleMetrics.configured();
+        sessionMetrics.record(newRecord("b"), file, helperB);
+        RuleMetrics.finished(helperB, true);
+        lines.clear();
+
+        // In a parallel build, an earlier module may finish after the last
+        RuleMetrics.configured();
+        sessionMetrics.record(newRecord("a"), file, helperA);
+        RuleMetrics.finished(helperA, true);
+        sessionMetrics.summarise(helperA.getLog());
+        assertTrue(lines.isEmpty());
+        assertEquals(2, readLines(file).size());
+        assertEquals(2, sessionMetrics.getRecords().size());
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.SimpleScriptContext;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.plugin.logging.Log;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScriptEnginePoolTest {
+
+    private EnforcerRuleHelper helper;
+
+    private ScriptEnginePool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        helper = mockHelper(new Object());
+        pool = ScriptEnginePool.forLanguage(helper, "javascript");
+        pool.clear();
+        pool.configure(2, ScriptEnginePool.DEFAULT_IDLE_TIMEOUT);
+    }
+
+    @After
+    public void tearDown() {
+        pool.configure(ScriptEnginePool.DEFAULT_MAX_IDLE,
+                ScriptEnginePool.DEFAULT_IDLE_TIMEOUT);
+        pool.clear();
+    }
+
+    private EnforcerRuleHelper mockHelper(final Object session)
+            throws Exception {
+        final EnforcerRuleHelper helper = mock(EnforcerRuleHelper.class);
+        when(helper.getLog()).thenReturn(mock(Log.class));
+        when(helper.evaluate("${session}")).thenReturn(session);
+        return helper;
+    }
+
+    @Test
+    public void poolShouldBeSharedPerLanguage() {
+        assertSame(pool, ScriptEnginePool.forLanguage(helper, "javascript"));
+    }
+
+    @Test
+    public void poolsShouldNotBeSharedBetweenSessions() throws Exception {
+        assertNotSame(pool, ScriptEnginePool.forLanguage(
+                mockHelper(new Object()), "javascript"));
+    }
+
+    @Test
+    public void unusedLibraryPoolsShouldBeEvicted() {
+        final ScriptEnginePool library =
+                ScriptEnginePool.forLibrary(helper, "javascript", "var a;");
+        library.configure(2, 0L);
+        final ScriptEngine engine = library.borrow();
+
+        ScriptEnginePool.forLibrary(helper, "javascript", "var b;");
+        assertSame(library,
+                ScriptEnginePool.forLibrary(helper, "javascript", "var a;"));
+
+        library.release(engine);
+        ScriptEnginePool.forLibrary(helper, "javascript", "var b;");
+        assertNotSame(library,
+                ScriptEnginePool.forLibrary(helper, "javascript", "var a;"));
+    }
+
+    @Test
+    public void abandonedEnginesShouldNotKeepLibraryPools() {
+        final ScriptEnginePool library =
+                ScriptEnginePool.forLibrary(helper, "javascript", "var a;");
+        final ScriptEngine engine = library.borrow();
+
+        library.abandon(engine);
+        ScriptEnginePool.forLibrary(helper, "javascript", "var b;");
+        assertNotSame(library,
+                ScriptEnginePool.forLibrary(helper, "javascript", "var a;"));
+    }
+
+    @Test
+    public void abandonedEngineShouldNotBeReused() {
+        final ScriptEngine engine = pool.borrow();
+        pool.abandon(engine);
+
+        assertNotSame(engine, pool.borrow());
+    }
+
+    @Test
+    public void releasedEngineShouldBeReused() {
+        final ScriptEngine engine = pool.borrow();
+        pool.release(engine);
+
+        assertSame(engine, pool.borrow());
+    }
+
+    @Test
+    public void borrowedEnginesShouldBeExclusive() {
+        final ScriptEngine first = pool.borrow();
+        final ScriptEngine second = pool.borrow();
+
+        assertNotSame(first, second);
+    }
+
+    @Test
+    public void engineScopeShouldBeResetOnRelease() {
+        final ScriptEngine engine = pool.borrow();
+        engine.getBindings(ScriptContext.ENGINE_SCOPE).put("leak", "value");
+        pool.release(engine);
+
+        assertNull(pool.borrow()
+                .getBindings(ScriptContext.ENGINE_SCOPE).get("leak"));
+    }
+
+    @Test
+    public void idleEnginesShouldBeBounded() {
+        final ScriptEngine first = pool.borrow();
+        final ScriptEngine second = pool.borrow();
+        final ScriptEngine third = pool.borrow();
+
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+
+        assertEquals(2, pool.idleCount());
+    }
+
+    @Test
+    public void expiredEnginesShouldBeEvicted() throws Exception {
+        final ScriptEnginePool expiring = ScriptEnginePool.forLanguage(
+                mockHelper(new Object()), "javascript");
+        expiring.configure(2, 0L);
+        expiring.release(expiring.borrow());
+
+        assertNotNull(expiring.borrow());
+        assertEquals(0, expiring.idleCount());
+    }
+
+    @Test
+    public void limitsShouldOnlyBeWidenedByLaterRules() {
+        pool.configure(3, 0L);
+        final ScriptEngine first = pool.borrow();
+        final ScriptEngine second = pool.borrow();
+        final ScriptEngine third = pool.borrow();
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+
+        assertEquals(3, pool.idleCount());
+        pool.configure(1, 0L);
+        assertSame(third, pool.borrow());
+    }
+
+    @Test
+    public void enginesShouldBeCreatedAlike() {
+        final ScriptEngine first = pool.borrow();
+        final ScriptEngine second = pool.borrow();
+
+        assertSame(first.getFactory(), second.getFactory());
+        assertSame(first.getBindings(ScriptContext.GLOBAL_SCOPE),
+                second.getBindings(ScriptContext.GLOBAL_SCOPE));
+    }
+
+    @Test
+    public void identicalScriptsShouldBeCompiledOnce() throws Exception {
+        final Log log = mock(Log.class);
+        final ScriptMetrics metrics = new ScriptMetrics();
+        final ScriptEngine engine = pool.borrow();
+
+        assertEquals(Boolean.TRUE, pool.eval(engine, "1 === 1;", null,
+                new SimpleScriptContext(), log, metrics));
+        assertEquals(Boolean.TRUE, pool.eval(engine, "1 === 1;", null,
+                new SimpleScriptContext(), log, metrics));
+        pool.eval(engine, "1 === 1;", "UTF-8", new SimpleScriptContext(), log,
+                metrics);
+
+        assertEquals(2, pool.compiledCount());
+        assertEquals(2, metrics.getCompileMisses());
+        assertEquals(1, metrics.getCompileHits());
+    }
+
+    @Test
+    public void compiledScriptsShouldOnlyBeSharedByThreadSafeEngines()
+            throws Exception {
+        final Log log = mock(Log.class);
+        final ScriptMetrics metrics = new ScriptMetrics();
+        final ScriptEngine first = pool.borrow();
+        final ScriptEngine second = pool.borrow();
+
+        pool.eval(first, "1 === 1;", null, new SimpleScriptContext(), log,
+                metrics);
+        pool.eval(second, "1 === 1;", null, new SimpleScriptContext(), log,
+                metrics);
+
+        final Object threading =
+                first.getFactory().getParameter("THREADING");
+        final boolean shared = "MULTITHREADED".equals(threading)
+                || "THREAD-ISOLATED".equals(threading)
+                || "STATELESS".equals(threading);
+        assertEquals(shared ? 1 : 2, pool.compiledCount());
+    }
+
+    @Test
+    public void compiledScriptsShouldBeBounded() throws Exception {
+        final Log log = mock(Log.class);
+        final ScriptMetrics metrics = new ScriptMetrics();
+        final ScriptEngine engine = pool.borrow();
+
+        for (int ii = 0; ii <= ScriptEnginePool.MAX_COMPILED; ii++)
+            pool.eval(engine, ii + ";", null, new SimpleScriptContext(), log,
+                    metrics);
+
+        assertEquals(ScriptEnginePool.MAX_COMPILED, pool.compiledCount());
+    }
+
+    @Test
+    public void unknownLanguageShouldYieldNoEngine() {
+        assertNull(ScriptEnginePool.forLanguage(helper, "no-such-language")
+                .borrow());
+    }
+}
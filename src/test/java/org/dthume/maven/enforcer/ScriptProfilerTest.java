@@ -0,0 +1,146 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.plugin.logging.Log;
+import org.junit.Test;
+
+public class ScriptProfilerTest {
+
+    private File newBuildDirectory() throws Exception {
+        final File file = File.createTempFile("profile", "");
+        file.delete();
+        file.deleteOnExit();
+        return file;
+    }
+
+    private List<String> readLines(File file) throws Exception {
+        final List<String> lines = new ArrayList<String>();
+        final BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            for (String line; null != (line = in.readLine());)
+                lines.add(line);
+        } finally {
+            in.close();
+        }
+        return lines;
+    }
+
+    @Test
+    public void samplesOutsideScriptsShouldBeAttributedToEngine()
+            throws Exception {
+        final ScriptProfiler profiler = new ScriptProfiler(1L);
+        final ScriptProfiler.Sampler sampler = profiler.start("script");
+        Thread.sleep(100L);
+        sampler.finish();
+
+        final Map<String, Integer> samples = profiler.getSamples();
+        assertEquals(1, samples.size());
+        assertTrue(samples.containsKey("script;[engine]"));
+        assertTrue(0 < profiler.getSampleCount());
+    }
+
+    @Test
+    public void profiledRuleShouldWriteCollapsedStacks() throws Exception {
+        final File buildDirectory = newBuildDirectory();
+        final EnforcerRuleHelper helper = mock(EnforcerRuleHelper.class);
+        when(helper.getLog()).thenReturn(mock(Log.class));
+        when(helper.evaluate("${project.build.directory}"))
+            .thenReturn(buildDirectory.getPath());
+
+        final ScriptRule rule = new ScriptRule();
+        rule.setLanguage("javascript");
+        rule.setProfile(true);
+        rule.setProfileInterval(1L);
+        rule.setScript("function spin(ms) {"
+                + " var end = Date.now() + ms; while (Date.now() < end) {} }"
+                + " spin(300); true;");
+        rule.execute(helper);
+
+        final File[] profiles =
+                new File(buildDirectory, "script-profiles").listFiles();
+        assertEquals(1, profiles.length);
+        assertTrue(profiles[0].getName().endsWith(".collapsed"));
+
+        boolean sampledScript = false;
+        for (final String line : readLines(profiles[0])) {
+            assertTrue(line, line.matches("inline;.* \\d+"));
+            sampledScript |= line.contains("spin (");
+        }
+        assertTrue("expected samples within the script", sampledScript);
+
+        profiles[0].delete();
+        profiles[0].getParentFile().delete();
+        buildDirectory.delete();
+    }
+
+    @Test
+    public void profiledScriptFileShouldNameFrames() throws Exception {
+        final File buildDirectory = newBuildDirectory();
+        final EnforcerRuleHelper helper = mock(EnforcerRuleHelper.class);
+        when(helper.getLog()).thenReturn(mock(Log.class));
+        when(helper.evaluate("${project.build.directory}"))
+            .thenReturn(buildDirectory.getPath());
+
+        final File script = File.createTempFile("spin", ".js");
+        script.deleteOnExit();
+        final Writer writer = new FileWriter(script);
+        writer.write("function spin(ms) {"
+                + " var end = Date.now() + ms; while (Date.now() < end) {} }"
+                + " spin(300); true;");
+        writer.close();
+
+        final ScriptRule rule = new ScriptRule();
+        rule.setLanguage("javascript");
+        rule.setProfile(true);
+        rule.setProfileInterval(1L);
+        rule.setScriptFile(script);
+        rule.execute(helper);
+
+        final File[] profiles =
+                new File(buildDirectory, "script-profiles").listFiles();
+        assertEquals(1, profiles.length);
+        assertTrue(profiles[0].getName().matches(
+                java.util.regex.Pattern.quote(script.getName())
+                + "-[0-9a-f]{8}\\.collapsed"));
+
+        boolean namedFrame = false;
+        for (final String line : readLines(profiles[0]))
+            namedFrame |= line.contains("spin (" + script.getPath() + ":");
+        assertTrue("expected frames named by the script file", namedFrame);
+
+        profiles[0].delete();
+        profiles[0].getParentFile().delete();
+        buildDirectory.delete();
+    }
+}
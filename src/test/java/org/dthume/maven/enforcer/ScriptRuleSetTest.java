@@ -0,0 +1,175 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleException;
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.plugin.logging.Log;
+import org.junit.Test;
+
+public class ScriptRuleSetTest {
+
+    private EnforcerRuleHelper mockHelper() {
+        final EnforcerRuleHelper helper = mock(EnforcerRuleHelper.class);
+        when(helper.getLog()).thenReturn(mock(Log.class));
+        return helper;
+    }
+
+    private ScriptCheck newCheck(String script, String message) {
+        final ScriptCheck check = new ScriptCheck();
+        check.setScript(script);
+        check.setMessage(message);
+        return check;
+    }
+
+    private ScriptRuleSet newRuleSet(ScriptCheck...checks) {
+        final ScriptRuleSet rules = new ScriptRuleSet();
+        rules.setLanguage("javascript");
+        rules.setChecks(Arrays.asList(checks));
+        return rules;
+    }
+
+    @Test
+    public void passingChecksShouldPass() throws Exception {
+        newRuleSet(newCheck("true;", "a"), newCheck("true;", "b"))
+            .execute(mockHelper());
+    }
+
+    @Test
+    public void allFailuresShouldBeReported() throws Exception {
+        final ScriptRuleSet rules = newRuleSet(
+                newCheck("false;", "first"),
+                newCheck("true;", "second"),
+                newCheck("null;", "third"));
+        try {
+            rules.execute(mockHelper());
+            fail("Expected rule set to fail");
+        } catch (EnforcerRuleException e) {
+            assertTrue(e.getMessage().startsWith("2 of 3 checks failed"));
+            assertTrue(e.getMessage().contains("first"));
+            assertFalse(e.getMessage().contains("second"));
+            assertTrue(e.getMessage().contains("third"));
+        }
+    }
+
+    @Test
+    public void scriptExceptionShouldNotStopLaterChecks() throws Exception {
+        final List<Object> seen = new ArrayList<Object>();
+        final Map<String, Object> bindings = new HashMap<String, Object>();
+        bindings.put("seen", seen);
+
+        final ScriptRuleSet rules = newRuleSet(
+                newCheck("this is not valid javascript", "broken"),
+                newCheck("seen.add('ran'); true;", "later"));
+        rules.setScriptBindings(bindings);
+        try {
+            rules.execute(mockHelper());
+            fail("Expected rule set to fail");
+        } catch (EnforcerRuleException e) {
+            assertTrue(e.getMessage().contains("broken"));
+            assertFalse(e.getMessage().contains("later"));
+        }
+        assertEquals(1, seen.size());
+    }
+
+    @Test
+    public void checksShouldShareOneContext() throws Exception {
+        newRuleSet(newCheck("var shared = 42; true;", "define"),
+                newCheck("shared == 42;", "use"))
+            .execute(mockHelper());
+    }
+
+    @Test
+    public void bindingsShouldBeVisibleToAllChecks() throws Exception {
+        final Map<String, Object> bindings = new HashMap<String, Object>();
+        bindings.put("x", "value");
+
+        final ScriptRuleSet rules = newRuleSet(
+                newCheck("x == 'value';", "a"),
+                newCheck("x == 'value';", "b"));
+        rules.setScriptBindings(bindings);
+        rules.execute(mockHelper());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void restrictedBindingsShouldRejectRuleHelperBinding()
+            throws Exception {
+        final EnforcerRuleHelper helper = mockHelper();
+        final Map<String, Object> bindings = new HashMap<String, Object>();
+        bindings.put("helper", helper);
+
+        final ScriptRuleSet rules = newRuleSet(newCheck("true;", "a"));
+        rules.setRestrictedBindings(true);
+        rules.setScriptBindings(bindings);
+        rules.execute(helper);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyChecksShouldBeRejected() throws Exception {
+        newRuleSet().execute(mockHelper());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkWithoutScriptShouldBeRejected() throws Exception {
+        newRuleSet(new ScriptCheck()).execute(mockHelper());
+    }
+
+    @Test
+    public void parallelFailuresShouldBeReportedInOrder() throws Exception {
+        final ScriptRuleSet rules = newRuleSet(
+                newCheck("for (var i = 0; i < 200000; i++) {} false;",
+                        "first"),
+                newCheck("true;", "second"),
+                newCheck("false;", "third"));
+        rules.setParallelism(3);
+        try {
+            rules.execute(mockHelper());
+            fail("Expected rule set to fail");
+        } catch (EnforcerRuleException e) {
+            assertTrue(e.getMessage().startsWith("2 of 3 checks failed"));
+            assertTrue(e.getMessage().indexOf("first")
+                    < e.getMessage().indexOf("third"));
+        }
+    }
+
+    @Test
+    public void parallelChecksShouldRunConcurrently() throws Exception {
+        final String script = "latch.countDown();"
+                + " latch.await(10, java.util.concurrent.TimeUnit.SECONDS);";
+        final Map<String, Object> bindings = new HashMap<String, Object>();
+        bindings.put("latch", new CountDownLatch(2));
+
+        final ScriptRuleSet rules =
+                newRuleSet(newCheck(script, "a"), newCheck(script, "b"));
+        rules.setScriptBindings(bindings);
+        rules.setParallelism(2);
+        rules.execute(mockHelper());
+    }
+}
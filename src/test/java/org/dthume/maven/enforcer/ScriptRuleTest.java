@@ -22,12 +22,30 @@ package org.dthume.maven.enforcer;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.maven.enforcer.rule.api.EnforcerRuleException;
 import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
 import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.junit.Test;
 
 public class ScriptRuleTest {
@@ -127,6 +145,672 @@ public class ScriptRuleTest {
         assertFalse("cached result should be invalid", rule.isResultValid(rule));
     }
     
+    public static class Counter {
+        private int count = 0;
+        public void increment() { count++; }
+        public int getCount() { return count; }
+        public String toString() { return "counter"; }
+    }
+
+    public static class BindingPredicate implements ScriptPredicate {
+        static final AtomicInteger INSTANCES = new AtomicInteger();
+
+        public BindingPredicate() { INSTANCES.incrementAndGet(); }
+
+        public Object test(Map<String, Object> bindings) {
+            return Boolean.valueOf("expected".equals(bindings.get("value")));
+        }
+    }
+
+    public static class ViolationsPredicate implements ScriptPredicate {
+        public Object test(Map<String, Object> bindings) {
+            return Arrays.asList(new Violation("E1", "bad thing", "here"));
+        }
+    }
+
+    private ScriptRule newJavaRule(String value) {
+        final Map<String, Object> bindings = new HashMap<String, Object>();
+        bindings.put("value", value);
+
+        final ScriptRule rule = new ScriptRule();
+        rule.setLanguage("java");
+        rule.setScript(BindingPredicate.class.getName());
+        rule.setScriptBindings(bindings);
+        return rule;
+    }
+
+    @Test
+    public void javaPredicateShouldBeInvokedWithBindings() throws Exception {
+        newJavaRule("expected").execute(mockHelper());
+    }
+
+    @Test(expected = EnforcerRuleException.class)
+    public void falseJavaPredicateShouldFail() throws Exception {
+        newJavaRule("unexpected").execute(mockHelper());
+    }
+
+    @Test
+    public void javaPredicateViolationsShouldFailRule() throws Exception {
+        final ScriptRule rule = new ScriptRule();
+        rule.setLanguage("java");
+        rule.setScript(ViolationsPredicate.class.getName());
+        rule.setResultEvaluator(new ViolationsResultEvaluator());
+        try {
+            rule.execute(mockHelper());
+            fail("Expected rule to fail");
+        } catch (EnforcerRuleException e) {
+            assertTrue(e.getMessage().contains("bad thing"));
+        }
+    }
+
+    @Test
+    public void javaPredicateShouldBeInstantiatedOnce() throws Exception {
+        newJavaRule("expected").execute(mockHelper());
+        final int instances = BindingPredicate.INSTANCES.get();
+
+        for (int ii = 0; ii < 3; ii++)
+            newJavaRule("expected").execute(mockHelper());
+        assertEquals(instances, BindingPredicate.INSTANCES.get());
+    }
+
+    @Test(expected = EnforcerRuleException.class)
+    public void missingJavaPredicateShouldFail() throws Exception {
+        final ScriptRule rule = new ScriptRule();
+        rule.setLanguage("java");
+        rule.setScript("org.example.NoSuchPredicate");
+        rule.execute(mockHelper());
+    }
+
+    /** Spins until interrupted, so that abandoned workers terminate. */
+    private static final String SPIN =
+            "var t = java.lang.Thread.currentThread();"
+            + " while (!t.isInterrupted()) {} true;";
+
+    @Test(expected = EnforcerRuleException.class)
+    public void overrunningTimeoutShouldFail() throws Exception {
+        final ScriptRule rule = newInlineJSRule(SPIN);
+        rule.setTimeout(100L);
+        rule.execute(mockHelper());
+    }
+
+    @Test(expected = EnforcerRuleException.class)
+    public void overrunningCpuTimeBudgetShouldFail() throws Exception {
+        final ScriptRule rule = newInlineJSRule(SPIN);
+        rule.setCpuTimeBudget(100L);
+        rule.setTimeout(10000L);
+        rule.execute(mockHelper());
+    }
+
+    @Test
+    public void overrunningTimeoutShouldOnlyWarnIfConfigured()
+            throws Exception {
+        final ScriptRule rule = newInlineJSRule(SPIN);
+        rule.setTimeout(100L);
+        rule.setBudgetAction("warn");
+        rule.execute(mockHelper());
+    }
+
+    @Test
+    public void scriptWithinBudgetShouldPass() throws Exception {
+        final ScriptRule rule = newInlineJSRule("1 == 1;");
+        rule.setTimeout(10000L);
+        rule.setCpuTimeBudget(10000L);
+        rule.execute(mockHelper());
+    }
+
+    @Test(expected = EnforcerRuleException.class)
+    public void failingScriptWithinBudgetShouldFail() throws Exception {
+        final ScriptRule rule = newInlineJSRule("false;");
+        rule.setTimeout(10000L);
+        rule.execute(mockHelper());
+    }
+
+    @Test
+    public void persistedResultShouldSkipExecution() throws Exception {
+        final File dir = File.createTempFile("result-cache", "");
+        dir.delete();
+
+        final Counter counter = new Counter();
+        final Map<String, Object> bindings = new HashMap<String, Object>();
+        bindings.put("counter", counter);
+
+        for (int ii = 0; ii < 2; ii++) {
+            final ScriptRule rule =
+                    newInlineJSRule("counter.increment(); true;");
+            rule.setScriptBindings(bindings);
+            rule.setResultCacheDirectory(dir);
+            rule.execute(mockHelper());
+        }
+
+        assertEquals(1, counter.getCount());
+    }
+
+    @Test
+    public void metricsShouldBeRecordedPerExecution() throws Exception {
+        final EnforcerRuleHelper helper = mockHelper();
+        when(helper.evaluate("${session}")).thenReturn(new Object());
+        when(helper.evaluate("${project.artifactId}")).thenReturn("module");
+
+        final ScriptRule rule = newInlineJSRule("true;");
+        rule.setMetrics(true);
+        rule.execute(helper);
+        try {
+            newInlineJSRule("false;").execute(helper);
+            fail("Expected rule to fail");
+        } catch (EnforcerRuleException e) {
+            // Not recorded, as metrics are not enabled for this rule
+        }
+
+        final List<RuleMetrics.Record> records =
+                RuleMetrics.forSession(helper).getRecords();
+        assertEquals(1, records.size());
+        assertEquals("module", records.get(0).module);
+        assertEquals("execute", records.get(0).phase);
+        assertEquals("pass", records.get(0).outcome);
+        assertEquals("off", records.get(0).resultCache);
+    }
+
+    @Test
+    public void changedResultCachePropertyShouldReexecute() throws Exception {
+        final File dir = File.createTempFile("result-cache", "");
+        dir.delete();
+
+        final Counter counter = new Counter();
+        final Map<String, Object> bindings = new HashMap<String, Object>();
+        bindings.put("counter", counter);
+
+        for (int ii = 0; ii < 2; ii++) {
+            final EnforcerRuleHelper helper = mockHelper();
+            when(helper.evaluate("${project.version}")).thenReturn("1." + ii);
+
+            final ScriptRule rule =
+                    newInlineJSRule("counter.increment(); true;");
+            rule.setScriptBindings(bindings);
+            rule.setResultCacheDirectory(dir);
+            rule.setResultCacheProperties(
+                    java.util.Collections.singletonList("project.version"));
+            rule.execute(helper);
+        }
+
+        assertEquals(2, counter.getCount());
+    }
+
+    private File newScriptFile(String content) throws Exception {
+        final File file = File.createTempFile("script", ".js");
+        file.deleteOnExit();
+        final Writer writer = new FileWriter(file);
+        writer.write(content);
+        writer.close();
+        return file;
+    }
+
+    private ScriptRule newCacheableFileRule(File file) {
+        final ScriptRule rule = newJSRule();
+        rule.setScriptFile(file);
+        rule.setValidatorScript("true;");
+        return rule;
+    }
+
+    @Test
+    public void identicalScriptFilesShouldShareCacheId() throws Exception {
+        final ScriptRule first = newCacheableFileRule(newScriptFile("true;"));
+        final ScriptRule second = newCacheableFileRule(newScriptFile("true;"));
+
+        assertEquals(first.getCacheId(), second.getCacheId());
+    }
+
+    @Test
+    public void editedScriptFileShouldChangeCacheId() throws Exception {
+        final File file = newScriptFile("true;");
+        final ScriptRule rule = newCacheableFileRule(file);
+        final String before = rule.getCacheId();
+
+        final Writer writer = new FileWriter(file);
+        writer.write("1 === 1;");
+        writer.close();
+
+        assertFalse(before.equals(rule.getCacheId()));
+    }
+
+    @Test
+    public void settersShouldInvalidateCacheId() throws Exception {
+        final ScriptRule rule = newCacheableFileRule(newScriptFile("true;"));
+        final String before = rule.getCacheId();
+        assertEquals(before, rule.getCacheId());
+
+        rule.setMessage("changed");
+        final String changed = rule.getCacheId();
+        assertFalse(before.equals(changed));
+
+        rule.setScriptBindings(
+                java.util.Collections.<String, Object>singletonMap("a", 1));
+        assertFalse(changed.equals(rule.getCacheId()));
+    }
+
+    @Test
+    public void evaluatorAndScopeShouldChangeCacheId() throws Exception {
+        final ScriptRule first = newCacheableFileRule(newScriptFile("true;"));
+        final ScriptRule second = newCacheableFileRule(newScriptFile("true;"));
+        second.setResultEvaluator(new DefaultScriptResultEvaluator());
+        assertEquals(first.getCacheId(), second.getCacheId());
+
+        second.setResultEvaluator(new ViolationsResultEvaluator());
+        final String violations = second.getCacheId();
+        assertFalse(first.getCacheId().equals(violations));
+        second.setResultEvaluator(new ViolationsResultEvaluator());
+        assertEquals(violations, second.getCacheId());
+
+        first.setScope("session");
+        assertFalse(first.getCacheId().equals(
+                newCacheableFileRule(newScriptFile("true;")).getCacheId()));
+    }
+
+    @Test
+    public void bindingOrderShouldNotAffectCacheId() throws Exception {
+        final Map<String, Object> forward =
+                new LinkedHashMap<String, Object>();
+        forward.put("a", Arrays.asList("1", "2"));
+        forward.put("b", "3");
+
+        final Map<String, Object> reverse =
+                new LinkedHashMap<String, Object>();
+        reverse.put("b", "3");
+        reverse.put("a", Arrays.asList("1", "2"));
+
+        final ScriptRule first = newInlineJSRule("true;");
+        first.setValidatorScript("true;");
+        first.setScriptBindings(forward);
+
+        final ScriptRule second = newInlineJSRule("true;");
+        second.setValidatorScript("true;");
+        second.setScriptBindings(reverse);
+
+        assertEquals(first.getCacheId(), second.getCacheId());
+    }
+
+    @Test
+    public void sessionContextShouldBeShared() throws Exception {
+        final Object session = new Object();
+
+        final EnforcerRuleHelper first = mockHelper();
+        when(first.evaluate("${session}")).thenReturn(session);
+        final ScriptRule writer = newInlineJSRule("shared.put('foo', 1); true;");
+        writer.setSessionContextKey("shared");
+        writer.execute(first);
+
+        final EnforcerRuleHelper second = mockHelper();
+        when(second.evaluate("${session}")).thenReturn(session);
+        final ScriptRule reader = newInlineJSRule("1 == shared.get('foo');");
+        reader.setSessionContextKey("shared");
+        reader.execute(second);
+    }
+
+    @Test
+    public void concurrentRulesShouldBeIsolated() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Boolean>> results =
+                    new ArrayList<Future<Boolean>>();
+
+            for (int ii = 0; ii < 64; ii++) {
+                final Map<String, Object> bindings =
+                        new HashMap<String, Object>();
+                bindings.put("id", "rule" + ii);
+
+                results.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        final ScriptRule rule = newInlineJSRule(
+                                "ruleContext.put('id', id);"
+                                + "java.lang.Thread.yield();"
+                                + "id == ruleContext.get('id');");
+                        rule.setValidatorScript(
+                                "id == ruleContext.get('id');");
+                        rule.setScriptBindings(bindings);
+                        rule.execute(mockHelper());
+
+                        return rule.isResultValid(rule);
+                    }
+                }));
+            }
+
+            for (final Future<Boolean> result : results)
+                assertTrue("rule should see only its own state", result.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private ScriptRule newWatchingRule(File... watched) {
+        final ScriptRule rule = newInlineJSRule("true;");
+        rule.setWatchedFiles(Arrays.asList(watched));
+        return rule;
+    }
+
+    @Test
+    public void unchangedWatchedFileShouldBeValid() throws Exception {
+        final ScriptRule rule = newWatchingRule(newScriptFile("a"));
+        rule.execute(mockHelper());
+
+        assertTrue(rule.isCacheable());
+        assertTrue(rule.isResultValid(rule));
+    }
+
+    @Test
+    public void editedWatchedFileShouldBeStale() throws Exception {
+        final File file = newScriptFile("a");
+        final ScriptRule rule = newWatchingRule(file);
+        rule.execute(mockHelper());
+
+        final Writer writer = new FileWriter(file);
+        writer.write("changed");
+        writer.close();
+
+        assertFalse(rule.isResultValid(rule));
+    }
+
+    @Test
+    public void touchedButUnchangedFileShouldBeValid() throws Exception {
+        final File file = newScriptFile("a");
+        final ScriptRule rule = newWatchingRule(file);
+        rule.execute(mockHelper());
+
+        file.setLastModified(file.lastModified() - 60000L);
+
+        assertTrue(rule.isResultValid(rule));
+    }
+
+    @Test
+    public void newFileMatchingGlobShouldBeStale() throws Exception {
+        final File dir = File.createTempFile("watched", "");
+        dir.delete();
+        dir.mkdirs();
+        final ScriptRule rule =
+                newWatchingRule(new File(dir, "**" + File.separator + "*.js"));
+        rule.execute(mockHelper());
+        assertTrue(rule.isResultValid(rule));
+
+        new File(dir, "added.js").createNewFile();
+
+        assertFalse(rule.isResultValid(rule));
+    }
+
+    @Test
+    public void relativeGlobShouldBeResolvedAgainstBasedir()
+            throws Exception {
+        final File dir = File.createTempFile("basedir", "");
+        dir.delete();
+        dir.mkdirs();
+        final EnforcerRuleHelper helper = mockHelper();
+        when(helper.evaluate("${project.basedir}")).thenReturn(dir);
+
+        final ScriptRule rule =
+                newWatchingRule(new File("**" + File.separator + "*.js"));
+        rule.execute(helper);
+        assertTrue(rule.isResultValid(rule));
+
+        new File(dir, "added.js").createNewFile();
+
+        assertFalse(rule.isResultValid(rule));
+    }
+
+    @Test
+    public void changedWatchedPropertyShouldBeStale() throws Exception {
+        final EnforcerRuleHelper helper = mockHelper();
+        when(helper.evaluate("${project.version}")).thenReturn("1.0");
+
+        final ScriptRule rule = newInlineJSRule("true;");
+        rule.setWatchedProperties(
+                java.util.Collections.singletonList("project.version"));
+        rule.execute(helper);
+        assertTrue(rule.isResultValid(rule));
+
+        when(helper.evaluate("${project.version}")).thenReturn("1.1");
+
+        assertFalse(rule.isResultValid(rule));
+    }
+
+    private EnforcerRuleHelper mockVersionHelper(Object session,
+            String version) throws Exception {
+        final EnforcerRuleHelper helper = mockHelper();
+        when(helper.evaluate("${session}")).thenReturn(session);
+        when(helper.evaluate("${project.version}")).thenReturn(version);
+        return helper;
+    }
+
+    /** Executes a rule as the enforcer would, given a cached rule. */
+    private ScriptRule enforceVersionRule(ScriptRule cached,
+            EnforcerRuleHelper helper, Counter counter) throws Exception {
+        final ScriptRule rule = newInlineJSRule("counter.increment(); true;");
+        rule.setScriptBindings(
+                java.util.Collections.<String, Object>singletonMap(
+                        "counter", counter));
+        rule.setWatchedProperties(
+                java.util.Collections.singletonList("project.version"));
+
+        if (null == cached || !rule.getCacheId().equals(cached.getCacheId())
+                || !rule.isResultValid(cached))
+            rule.execute(helper);
+        return rule;
+    }
+
+    @Test
+    public void watchedPropertyShouldBeCheckedForEachModule()
+            throws Exception {
+        final Object session = new Object();
+        final Counter counter = new Counter();
+
+        final ScriptRule first = enforceVersionRule(null,
+                mockVersionHelper(session, "1.0"), counter);
+        assertEquals(1, counter.getCount());
+
+        enforceVersionRule(first, mockVersionHelper(session, "2.0"), counter);
+        assertEquals("module with another version should be re-executed",
+                2, counter.getCount());
+    }
+
+    @Test
+    public void unchangedWatchedPropertyShouldBeSkippedInOtherModules()
+            throws Exception {
+        final Object session = new Object();
+        final Counter counter = new Counter();
+
+        final ScriptRule first = enforceVersionRule(null,
+                mockVersionHelper(session, "1.0"), counter);
+        enforceVersionRule(first, mockVersionHelper(session, "1.0"), counter);
+
+        assertEquals(1, counter.getCount());
+    }
+
+    @Test
+    public void ruleBindingModuleDataShouldRunInEveryModule()
+            throws Exception {
+        final Object session = new Object();
+        final Counter counter = new Counter();
+
+        for (final String module : Arrays.asList("a", "b", "b")) {
+            final EnforcerRuleHelper helper =
+                    mockVersionHelper(session, "1.0");
+            when(helper.evaluate("${project}"))
+                .thenReturn(newProject(module));
+
+            final ScriptRule rule =
+                    newInlineJSRule("counter.increment(); true;");
+            rule.setScriptBindings(
+                    java.util.Collections.<String, Object>singletonMap(
+                            "counter", counter));
+            rule.setWatchedProperties(
+                    java.util.Collections.singletonList("project.version"));
+            rule.setRuleHelperKey("helper");
+            rule.execute(helper);
+        }
+
+        assertEquals("each module should be executed once",
+                2, counter.getCount());
+    }
+
+    @Test
+    public void failedRuleShouldNotBeValid() throws Exception {
+        final ScriptRule rule = newWatchingRule(newScriptFile("a"));
+        rule.setScript("false;");
+        try {
+            rule.execute(mockHelper());
+            fail("Expected rule to fail");
+        } catch (EnforcerRuleException e) {
+            assertFalse(rule.isResultValid(rule));
+        }
+    }
+
+    private MavenProject newProject(String artifactId) {
+        final Model model = new Model();
+        model.setGroupId("group");
+        model.setArtifactId(artifactId);
+        return new MavenProject(model);
+    }
+
+    private MavenProject newEnforcedProject(String artifactId) {
+        final MavenProject project = newProject(artifactId);
+        final Plugin plugin = new Plugin();
+        plugin.setArtifactId("maven-enforcer-plugin");
+        project.getBuildPlugins().add(plugin);
+        return project;
+    }
+
+    private MavenProject newAggregatingProject(String artifactId,
+            String aggregate) {
+        final Xpp3Dom script = new Xpp3Dom("aggregateScript");
+        script.setValue("counter.increment(); " + aggregate);
+        final Xpp3Dom rule = new Xpp3Dom("scriptRule");
+        rule.addChild(script);
+        final Xpp3Dom rules = new Xpp3Dom("rules");
+        rules.addChild(rule);
+        final Xpp3Dom configuration = new Xpp3Dom("configuration");
+        configuration.addChild(rules);
+
+        final MavenProject project = newEnforcedProject(artifactId);
+        final PluginExecution execution = new PluginExecution();
+        execution.setConfiguration(configuration);
+        ((Plugin) project.getBuildPlugins().get(0)).addExecution(execution);
+        return project;
+    }
+
+    private void executeAggregateRule(MavenSession session,
+            MavenProject project, Counter counter, String aggregate)
+            throws Exception {
+        final EnforcerRuleHelper helper = mockHelper();
+        when(helper.evaluate("${session}")).thenReturn(session);
+        when(helper.evaluate("${project}")).thenReturn(project);
+
+        final Map<String, Object> bindings = new HashMap<String, Object>();
+        bindings.put("counter", counter);
+        bindings.put("name", project.getArtifactId());
+
+        final ScriptRule rule = newInlineJSRule("name;");
+        rule.setScriptBindings(bindings);
+        rule.setAggregateScript("counter.increment(); " + aggregate);
+        rule.execute(helper);
+    }
+
+    @Test
+    public void aggregateScriptShouldRunOnceAtLastModule() throws Exception {
+        final MavenProject a = newProject("a");
+        final MavenProject b = newProject("b");
+        final MavenSession session = mock(MavenSession.class);
+        when(session.getSortedProjects()).thenReturn(Arrays.asList(a, b));
+
+        final Counter counter = new Counter();
+        final String aggregate = "moduleFacts.size() == 2"
+                + " && 'b' == moduleFacts.get('group:b');";
+        executeAggregateRule(session, a, counter, aggregate);
+        assertEquals(0, counter.getCount());
+
+        executeAggregateRule(session, b, counter, aggregate);
+        assertEquals(1, counter.getCount());
+    }
+
+    @Test
+    public void failingAggregateScriptShouldFailLastModule()
+            throws Exception {
+        final MavenProject a = newProject("a");
+        final MavenProject b = newProject("b");
+        final MavenSession session = mock(MavenSession.class);
+        when(session.getSortedProjects()).thenReturn(Arrays.asList(a, b));
+
+        final Counter counter = new Counter();
+        executeAggregateRule(session, a, counter, "false;");
+        try {
+            executeAggregateRule(session, b, counter, "false;");
+            fail("Expected aggregate script to fail");
+        } catch (EnforcerRuleException e) {
+            assertEquals(1, counter.getCount());
+        }
+    }
+
+    @Test
+    public void aggregateScriptShouldWaitForOutOfOrderModules()
+            throws Exception {
+        final MavenProject a = newProject("a");
+        final MavenProject b = newProject("b");
+        final MavenProject c = newProject("c");
+        final MavenSession session = mock(MavenSession.class);
+        when(session.getSortedProjects()).thenReturn(Arrays.asList(a, b, c));
+
+        final Counter counter = new Counter();
+        final String aggregate = "moduleFacts.size() == 3;";
+        // As in a parallel build, where the last module finishes first
+        executeAggregateRule(session, c, counter, aggregate);
+        executeAggregateRule(session, a, counter, aggregate);
+        assertEquals(0, counter.getCount());
+
+        executeAggregateRule(session, b, counter, aggregate);
+        assertEquals(1, counter.getCount());
+    }
+
+    @Test
+    public void aggregateScriptShouldSkipModulesWithoutEnforcer()
+            throws Exception {
+        final MavenProject a = newEnforcedProject("a");
+        final MavenProject b = newEnforcedProject("b");
+        final MavenProject c = newProject("c");
+        final MavenSession session = mock(MavenSession.class);
+        when(session.getSortedProjects()).thenReturn(Arrays.asList(a, b, c));
+
+        final Counter counter = new Counter();
+        final String aggregate = "moduleFacts.size() == 2;";
+        executeAggregateRule(session, a, counter, aggregate);
+        assertEquals(0, counter.getCount());
+
+        executeAggregateRule(session, b, counter, aggregate);
+        assertEquals(1, counter.getCount());
+    }
+
+    @Test
+    public void aggregateScriptShouldSkipModulesWithoutTheRule()
+            throws Exception {
+        final String aggregate = "moduleFacts.size() == 2;";
+        final MavenProject a = newAggregatingProject("a", aggregate);
+        final MavenProject b = newAggregatingProject("b", "false;");
+        final MavenProject c = newAggregatingProject("c", aggregate);
+        final MavenProject d = newEnforcedProject("d");
+        final MavenSession session = mock(MavenSession.class);
+        when(session.getSortedProjects())
+            .thenReturn(Arrays.asList(a, b, c, d));
+
+        final Counter counter = new Counter();
+        executeAggregateRule(session, a, counter, aggregate);
+        assertEquals(0, counter.getCount());
+
+        executeAggregateRule(session, c, counter, aggregate);
+        assertEquals(1, counter.getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cachedAggregateRuleShouldBeRejected() throws Exception {
+        final ScriptRule rule = newInlineJSRule("true;");
+        rule.setAggregateScript("true;");
+        rule.setValidatorScript("true;");
+        rule.execute(mockHelper());
+    }
+
     @Test
     public void inlineValidationShouldSucceed() throws Exception {
         final String script = "ruleContext.put(\"foo\", 1); true;";
@@ -140,4 +824,161 @@ public class ScriptRuleTest {
 
         assertTrue("cached result should be valid", rule.isResultValid(rule));
     }
+
+    @Test
+    public void validationContextShouldAcceptNullKeysAndValues()
+            throws Exception {
+        final String script = "ruleContext.put('foo', null);"
+                + " ruleContext.put(null, 'bar'); true;";
+        final String validation = "ruleContext.containsKey('foo')"
+                + " && null == ruleContext.get('foo')"
+                + " && 'bar' == ruleContext.get(null);";
+
+        final ScriptRule rule = newInlineJSRule(script);
+        rule.setValidatorScript(validation);
+
+        rule.execute(mockHelper());
+
+        assertTrue("cached result should be valid", rule.isResultValid(rule));
+    }
+
+    private ScriptRule newFunctionRule(String library, String function,
+            Object... args) {
+        final ScriptRule rule = newInlineJSRule(library);
+        rule.setFunction(function);
+        rule.setFunctionArguments(Arrays.asList(args));
+        return rule;
+    }
+
+    @Test
+    public void functionShouldBeInvokedWithArguments() throws Exception {
+        final String library =
+                "function atLeast(n) { return threshold >= n; }";
+        final Map<String, Object> bindings = new HashMap<String, Object>();
+        bindings.put("threshold", 3);
+
+        final ScriptRule passing = newFunctionRule(library, "atLeast", 2);
+        passing.setScriptBindings(bindings);
+        passing.execute(mockHelper());
+
+        final ScriptRule failing = newFunctionRule(library, "atLeast", 4);
+        failing.setScriptBindings(bindings);
+        try {
+            failing.execute(mockHelper());
+            fail("Expected function to fail the rule");
+        } catch (EnforcerRuleException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void libraryShouldBeLoadedOncePerEngine() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        final Map<String, Object> bindings = new HashMap<String, Object>();
+        bindings.put("loads", loads);
+        final String library = "loads.incrementAndGet();"
+                + " function ok() { return true; }"
+                + " function alsoOk() { return 1; }";
+
+        for (final String function : Arrays.asList("ok", "alsoOk", "ok")) {
+            final ScriptRule rule = newFunctionRule(library, function);
+            rule.setScriptBindings(bindings);
+            rule.setEnginePoolSize(1);
+            rule.execute(mockHelper());
+        }
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test(expected = EnforcerRuleException.class)
+    public void missingFunctionShouldFail() throws Exception {
+        newFunctionRule("function ok() { return true; }", "missing")
+            .execute(mockHelper());
+    }
+
+    private void executeScopedRule(MavenSession session, MavenProject project,
+            Counter counter, String scope, String script) throws Exception {
+        final EnforcerRuleHelper helper = mockHelper();
+        when(helper.evaluate("${session}")).thenReturn(session);
+        when(helper.evaluate("${project}")).thenReturn(project);
+        when(helper.evaluate("${project.parent}"))
+            .thenReturn(project.getParent());
+
+        final ScriptRule rule =
+                newInlineJSRule("counter.increment(); " + script);
+        rule.setScriptBindings(
+                java.util.Collections.<String, Object>singletonMap(
+                        "counter", counter));
+        rule.setScope(scope);
+        rule.execute(helper);
+    }
+
+    @Test
+    public void sessionScopedRuleShouldBeEvaluatedOnce() throws Exception {
+        final MavenSession session = mock(MavenSession.class);
+        final Counter counter = new Counter();
+
+        for (final String module : Arrays.asList("a", "b", "c"))
+            executeScopedRule(session, newProject(module), counter,
+                    "session", "true;");
+
+        assertEquals(1, counter.getCount());
+    }
+
+    @Test
+    public void parentScopedRuleShouldBeEvaluatedPerParent()
+            throws Exception {
+        final MavenSession session = mock(MavenSession.class);
+        final MavenProject first = newProject("first");
+        final MavenProject second = newProject("second");
+        final Counter counter = new Counter();
+
+        for (final MavenProject parent
+                : Arrays.asList(first, first, second, second)) {
+            final MavenProject module = newProject("module");
+            module.setParent(parent);
+            executeScopedRule(session, module, counter, "parent", "true;");
+        }
+
+        assertEquals(2, counter.getCount());
+    }
+
+    @Test
+    public void sharedFailureShouldFailEveryModule() throws Exception {
+        final MavenSession session = mock(MavenSession.class);
+        final Counter counter = new Counter();
+
+        for (final String module : Arrays.asList("a", "b")) {
+            try {
+                executeScopedRule(session, newProject(module), counter,
+                        "session", "false;");
+                fail("Expected shared failure in " + module);
+            } catch (EnforcerRuleException e) {
+                assertEquals(1, counter.getCount());
+            }
+        }
+    }
+
+    @Test
+    public void sharedScopeShouldRejectModuleBindings() throws Exception {
+        for (final String scope : Arrays.asList("parent", "session")) {
+            final ScriptRule rule = newInlineJSRule("true;");
+            rule.setScope(scope);
+            rule.setProjectViewKey("project");
+            try {
+                rule.execute(mockHelper());
+                fail("Expected module bindings to be rejected in " + scope);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().startsWith(
+                        "Rules with " + scope + " scope cannot bind"));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownScopeShouldBeRejected() throws Exception {
+        final ScriptRule rule = newInlineJSRule("true;");
+        rule.setScope("reactor");
+        rule.execute(mockHelper());
+    }
 }
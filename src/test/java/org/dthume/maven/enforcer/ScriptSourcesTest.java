@@ -0,0 +1,91 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+import org.junit.Test;
+
+public class ScriptSourcesTest {
+
+    private File newFile(byte[] content) throws Exception {
+        final File file = File.createTempFile("script-source", ".js");
+        file.deleteOnExit();
+        write(file, content);
+        return file;
+    }
+
+    private void write(File file, byte[] content) throws Exception {
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void unchangedFileShouldBeDecodedOnce() throws Exception {
+        final File file = newFile("true;".getBytes("UTF-8"));
+
+        final String first = ScriptSources.read(file, "UTF-8");
+        assertEquals("true;", first);
+        assertSame(first, ScriptSources.read(file, "UTF-8"));
+    }
+
+    @Test
+    public void changedFileShouldBeDecodedAgain() throws Exception {
+        final File file = newFile("true;".getBytes("UTF-8"));
+        ScriptSources.read(file, "UTF-8");
+
+        write(file, "false;".getBytes("UTF-8"));
+        assertEquals("false;", ScriptSources.read(file, "UTF-8"));
+    }
+
+    @Test
+    public void encodingShouldBeHonoured() throws Exception {
+        final File file = newFile("'\u00e9';".getBytes("ISO-8859-1"));
+
+        assertEquals("'\u00e9';", ScriptSources.read(file, "ISO-8859-1"));
+        assertEquals("'\ufffd';", ScriptSources.read(file, "UTF-8"));
+    }
+
+    @Test
+    public void largeFilesShouldBeReadAndReleased() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        while (sb.length() <= 256 * 1024)
+            sb.append("// padding\n");
+        sb.append("true;");
+
+        final File file = newFile(sb.toString().getBytes("UTF-8"));
+        assertEquals(sb.toString(), ScriptSources.read(file, "UTF-8"));
+        assertTrue("file should not be held open", file.delete());
+    }
+
+    @Test(expected = UnsupportedEncodingException.class)
+    public void unknownEncodingShouldBeRejected() throws Exception {
+        ScriptSources.read(newFile(new byte[0]), "no-such-encoding");
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.plugin.logging.Log;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScriptWarmupTest {
+
+    private ScriptEnginePool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = ScriptEnginePool.forLanguage(mockHelper(), "javascript");
+        pool.clear();
+        awaitWarmup();
+    }
+
+    /** Each test uses its own scripts, so none is already compiled. */
+    private String uniqueScript() {
+        return "// " + System.nanoTime() + "\ntrue;";
+    }
+
+    private void awaitWarmup() throws Exception {
+        for (int ii = 0; ii < 500 && ScriptWarmup.isRunning("javascript");
+                ii++)
+            Thread.sleep(10L);
+        assertFalse(ScriptWarmup.isRunning("javascript"));
+    }
+
+    private EnforcerRuleHelper mockHelper() {
+        final EnforcerRuleHelper helper = mock(EnforcerRuleHelper.class);
+        when(helper.getLog()).thenReturn(mock(Log.class));
+        return helper;
+    }
+
+    private ScriptWarmup.Scripts scripts(final String... scripts) {
+        return new ScriptWarmup.Scripts() {
+            public Collection<String> getScripts() {
+                return Arrays.asList(scripts);
+            }
+
+            public Collection<File> getScriptFiles() {
+                return Collections.emptyList();
+            }
+        };
+    }
+
+    @Test
+    public void finishedWarmupShouldBeAdoptedOnce() throws Exception {
+        final ScriptWarmup warmup = ScriptWarmup.start("javascript",
+                scripts(uniqueScript(), uniqueScript()));
+        awaitWarmup();
+
+        assertTrue(warmup.offerTo(pool));
+        assertEquals(1, pool.idleCount());
+        assertEquals(2, pool.compiledCount());
+        assertFalse(warmup.offerTo(pool));
+    }
+
+    @Test
+    public void configuredRuleShouldBeWarmedUpBeforeExecution()
+            throws Exception {
+        final ScriptRule rule = new ScriptRule();
+        rule.setWarmup(true);
+        rule.setScript(uniqueScript());
+        rule.setValidatorScript(uniqueScript());
+        awaitWarmup();
+
+        rule.execute(mockHelper());
+        assertEquals(2, pool.compiledCount());
+        assertTrue(rule.isResultValid(rule));
+        assertEquals(2, pool.compiledCount());
+    }
+
+    @Test
+    public void ruleWithoutWarmupShouldNotBeWarmedUp() throws Exception {
+        final ScriptRule rule = new ScriptRule();
+        rule.setScript(uniqueScript());
+        rule.setValidatorScript(uniqueScript());
+        assertFalse(ScriptWarmup.isRunning("javascript"));
+        rule.execute(mockHelper());
+
+        assertEquals(1, pool.compiledCount());
+    }
+
+    @Test
+    public void ruleSetChecksShouldBeWarmedUp() throws Exception {
+        final ScriptCheck first = new ScriptCheck();
+        first.setScript(uniqueScript());
+        final ScriptCheck second = new ScriptCheck();
+        second.setScript(uniqueScript());
+
+        final ScriptRuleSet rules = new ScriptRuleSet();
+        rules.setWarmup(true);
+        rules.setChecks(Arrays.asList(first, second));
+        awaitWarmup();
+
+        assertEquals(0, pool.compiledCount());
+        rules.execute(mockHelper());
+        assertEquals(2, pool.compiledCount());
+    }
+}
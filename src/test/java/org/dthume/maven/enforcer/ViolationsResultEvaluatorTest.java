@@ -0,0 +1,149 @@
+/*
+ * #%L
+ * Extra Maven Enforcer Rules
+ * %%
+ * Copyright (C) 2012 David Thomas Hume
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.dthume.maven.enforcer;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleException;
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.plugin.logging.Log;
+import org.junit.Test;
+
+public class ViolationsResultEvaluatorTest {
+
+    private final ViolationsResultEvaluator evaluator =
+            new ViolationsResultEvaluator();
+
+    private Map<String, Object> newRecord(String code, String message,
+            String location) {
+        final Map<String, Object> record = new HashMap<String, Object>();
+        record.put("code", code);
+        record.put("message", message);
+        record.put("location", location);
+        return record;
+    }
+
+    @Test
+    public void scalarResultsShouldUseDefaultEvaluation() {
+        assertNull(evaluator.getViolations(Boolean.TRUE));
+        assertTrue(evaluator.isValidResult(Boolean.TRUE));
+        assertFalse(evaluator.isValidResult(null));
+        assertFalse(evaluator.isValidResult(Short.valueOf((short) 0)));
+    }
+
+    @Test
+    public void emptyCollectionShouldBeValid() {
+        assertTrue(evaluator.getViolations(Collections.emptyList()).isEmpty());
+        assertTrue(evaluator.isValidResult(new Object[0]));
+    }
+
+    @Test
+    public void recordsShouldBecomeViolations() {
+        final List<Violation> violations = evaluator.getViolations(
+                Arrays.asList(newRecord("E1", "bad", "pom.xml"), "worse"));
+
+        assertEquals(2, violations.size());
+        assertEquals("E1", violations.get(0).getCode());
+        assertEquals("[E1] bad (pom.xml)", violations.get(0).toString());
+        assertNull(violations.get(1).getCode());
+        assertEquals("worse", violations.get(1).getMessage());
+        assertFalse(evaluator.isValidResult(violations));
+    }
+
+    @Test
+    public void singleRecordShouldBeOneViolation() {
+        assertEquals(1, evaluator.getViolations(
+                newRecord(null, "bad", null)).size());
+    }
+
+    @Test
+    public void plainMapsShouldNotBeCollectionsOfRecords() {
+        final Map<String, Object> result = new HashMap<String, Object>();
+        result.put("checked", Integer.valueOf(3));
+
+        assertNull(evaluator.getViolations(result));
+        assertTrue(evaluator.isValidResult(result));
+    }
+
+    @Test
+    public void markedMapsShouldHoldRecords() {
+        final Map<String, Object> result = new HashMap<String, Object>();
+        result.put("violations", Arrays.asList("bad", "worse"));
+        assertEquals(2, evaluator.getViolations(result).size());
+
+        result.put("violations", null);
+        assertTrue(evaluator.isValidResult(result));
+    }
+
+    @Test
+    public void smallBigNumbersShouldNotBeZero() {
+        assertTrue(evaluator.isValidResult(new BigDecimal("1E-400")));
+        assertFalse(evaluator.isValidResult(BigDecimal.ZERO.setScale(2)));
+        assertTrue(evaluator.isValidResult(BigInteger.ONE.shiftLeft(2000)));
+        assertFalse(evaluator.isValidResult(BigInteger.ZERO));
+    }
+
+    @Test
+    public void arraysShouldBeCollectionsOfRecords() {
+        final Object[] records = { new Violation("E2", "bad", null) };
+        assertEquals("E2", evaluator.getViolations(records).get(0).getCode());
+    }
+
+    @Test
+    public void allScriptViolationsShouldBeReported() throws Exception {
+        final EnforcerRuleHelper helper = mock(EnforcerRuleHelper.class);
+        when(helper.getLog()).thenReturn(mock(Log.class));
+
+        final ScriptRule rule = new ScriptRule();
+        rule.setLanguage("javascript");
+        rule.setResultEvaluator(evaluator);
+        rule.setMessage("Violations found");
+        rule.setScript("[{ code: 'E1', message: 'first' },"
+                + " { code: 'E2', message: 'second', location: 'x' }];");
+        try {
+            rule.execute(helper);
+            fail("Expected violations to fail the rule");
+        } catch (EnforcerRuleException e) {
+            assertEquals("Violations found\n - [E1] first\n - [E2] second (x)",
+                    e.getMessage());
+        }
+    }
+
+    @Test
+    public void emptyScriptArrayShouldPass() throws Exception {
+        final EnforcerRuleHelper helper = mock(EnforcerRuleHelper.class);
+        when(helper.getLog()).thenReturn(mock(Log.class));
+
+        final ScriptRule rule = new ScriptRule();
+        rule.setLanguage("javascript");
+        rule.setResultEvaluator(evaluator);
+        rule.setScript("[];");
+        rule.execute(helper);
+    }
+}